@@ -0,0 +1,112 @@
+package ca.uqac.drawbd;
+
+public class Delta
+{
+    public static final int STROKE = 1;
+    public static final int INSERT_BLANK = 2;
+    public static final int DUPLICATE = 3;
+    public static final int MOVE = 4;
+    public static final int REVERSE = 5;
+    public static final int DELETE = 6;
+    public static final int CLEAR = 7;
+
+    // Stroke brushes; BRUSH_PATTERN + n - 1 stands for drawable pattern_n
+    public static final int BRUSH_PAINT = 0;
+    public static final int BRUSH_ERASE = 1;
+    public static final int BRUSH_PATTERN = 2;
+    public static final int BRUSH_LAST = BRUSH_PATTERN + 7;
+
+    private final int type;
+    private final int from;
+    private final int to;
+    private final int arg;
+    private final Stroke stroke;
+    private final int brush;
+
+    private Delta(int type, int from, int to, int arg, Stroke stroke, int brush)
+    {
+        this.type = type;
+        this.from = from;
+        this.to = to;
+        this.arg = arg;
+        this.stroke = stroke;
+        this.brush = brush;
+    }
+
+    // Frame is the id of the target frame, not its position. Stroke coordinates and width are
+    // fractions of the canvas size, so peers may differ in resolution.
+    public static Delta stroke(int frame, Stroke stroke, int brush)
+    {
+        return new Delta(STROKE, frame, frame, 0, stroke, brush);
+    }
+
+    public static Delta insertBlank(int at, int count)
+    {
+        return new Delta(INSERT_BLANK, at, at, count, null, 0);
+    }
+
+    public static Delta duplicate(int from, int to)
+    {
+        return new Delta(DUPLICATE, from, to, 0, null, 0);
+    }
+
+    public static Delta move(int from, int to, int target)
+    {
+        return new Delta(MOVE, from, to, target, null, 0);
+    }
+
+    public static Delta reverse(int from, int to)
+    {
+        return new Delta(REVERSE, from, to, 0, null, 0);
+    }
+
+    public static Delta delete(int from, int to)
+    {
+        return new Delta(DELETE, from, to, 0, null, 0);
+    }
+
+    public static Delta clear()
+    {
+        return new Delta(CLEAR, 0, 0, 0, null, 0);
+    }
+
+    public int getType()
+    {
+        return type;
+    }
+
+    public int getFrame()
+    {
+        return from;
+    }
+
+    public int getFrom()
+    {
+        return from;
+    }
+
+    public int getTo()
+    {
+        return to;
+    }
+
+    public int getTarget()
+    {
+        return arg;
+    }
+
+    public int getCount()
+    {
+        return arg;
+    }
+
+    public Stroke getStroke()
+    {
+        return stroke;
+    }
+
+    public int getBrush()
+    {
+        return brush;
+    }
+}
@@ -0,0 +1,245 @@
+package ca.uqac.drawbd;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+public final class DeltaCodec
+{
+    // Normalized coordinates as 13-bit fixed point, a third of a pixel on a 2560 px canvas,
+    // so most touch-to-touch deltas fit in a single varint byte
+    private static final float SCALE = 8191f;
+
+    // Strokes may leave the view; points are signed and only bounded to keep deltas within an int
+    private static final float EXTENT = 64f;
+
+    private static final int MAX_BATCH = 16 * 1024 * 1024;
+
+    private DeltaCodec() {}
+
+    public static byte[] encode(List<Delta> deltas)
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            for (Delta delta : deltas) {
+                write(delta, out);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return out.toByteArray();
+    }
+
+    public static List<Delta> decode(byte[] data) throws IOException
+    {
+        List<Delta> deltas = new ArrayList<>();
+        ByteArrayInputStream in = new ByteArrayInputStream(data);
+        while (in.available() > 0) {
+            deltas.add(read(in));
+        }
+        return deltas;
+    }
+
+    public static void writeBatch(byte[] batch, OutputStream out) throws IOException
+    {
+        writeVarint(batch.length, out);
+        out.write(batch);
+    }
+
+    // Returns null on a clean end of stream
+    public static byte[] readBatch(InputStream in) throws IOException
+    {
+        int first = in.read();
+        if (first == -1) {
+            return null;
+        }
+
+        int length = readVarint(first, in);
+        if (length < 0 || length > MAX_BATCH) {
+            throw new IOException("Invalid batch length " + length);
+        }
+
+        byte[] batch = new byte[length];
+        int offset = 0;
+        while (offset < length) {
+            int n = in.read(batch, offset, length - offset);
+            if (n == -1) {
+                throw new EOFException();
+            }
+            offset += n;
+        }
+        return batch;
+    }
+
+    private static void write(Delta delta, OutputStream out) throws IOException
+    {
+        out.write(delta.getType());
+        switch (delta.getType()) {
+            case Delta.STROKE:
+                writeVarint(delta.getFrame(), out);
+                out.write(delta.getBrush());
+                writeStroke(delta.getStroke(), out);
+                break;
+            case Delta.INSERT_BLANK:
+                writeVarint(delta.getFrom(), out);
+                writeVarint(delta.getCount(), out);
+                break;
+            case Delta.MOVE:
+                writeVarint(delta.getFrom(), out);
+                writeVarint(delta.getTo(), out);
+                writeVarint(delta.getTarget(), out);
+                break;
+            case Delta.DUPLICATE:
+            case Delta.REVERSE:
+            case Delta.DELETE:
+                writeVarint(delta.getFrom(), out);
+                writeVarint(delta.getTo(), out);
+                break;
+            case Delta.CLEAR:
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown delta type " + delta.getType());
+        }
+    }
+
+    // Input comes from other devices, possibly another version of the app, so nothing is trusted
+    private static Delta read(ByteArrayInputStream in) throws IOException
+    {
+        int type = in.read();
+        switch (type) {
+            case Delta.STROKE: {
+                int frame = readVarint(in);
+                int brush = readByte(in);
+                if (brush > Delta.BRUSH_LAST) {
+                    throw new IOException("Unknown brush " + brush);
+                }
+                return Delta.stroke(frame, readStroke(in), brush);
+            }
+            case Delta.INSERT_BLANK:
+                return Delta.insertBlank(readVarint(in), readVarint(in));
+            case Delta.MOVE:
+                return Delta.move(readVarint(in), readVarint(in), readVarint(in));
+            case Delta.DUPLICATE:
+                return Delta.duplicate(readVarint(in), readVarint(in));
+            case Delta.REVERSE:
+                return Delta.reverse(readVarint(in), readVarint(in));
+            case Delta.DELETE:
+                return Delta.delete(readVarint(in), readVarint(in));
+            case Delta.CLEAR:
+                return Delta.clear();
+            case -1:
+                throw new EOFException();
+            default:
+                throw new IOException("Unknown delta type " + type);
+        }
+    }
+
+    // Color as 4 raw bytes, then the first point absolute and the others as zigzag deltas
+    private static void writeStroke(Stroke stroke, OutputStream out) throws IOException
+    {
+        int color = stroke.getColor();
+        out.write(color >>> 24);
+        out.write(color >>> 16);
+        out.write(color >>> 8);
+        out.write(color);
+        writeVarint(quantize(stroke.getWidth()), out);
+
+        float[] points = stroke.getPoints();
+        writeVarint(stroke.size(), out);
+        int px = 0;
+        int py = 0;
+        for (int i = 0; i < points.length; i += 2) {
+            int x = quantizePoint(points[i]);
+            int y = quantizePoint(points[i + 1]);
+            writeVarint(zigzag(x - px), out);
+            writeVarint(zigzag(y - py), out);
+            px = x;
+            py = y;
+        }
+    }
+
+    private static Stroke readStroke(ByteArrayInputStream in) throws IOException
+    {
+        int color = readByte(in) << 24 | readByte(in) << 16 | readByte(in) << 8 | readByte(in);
+        float width = readVarint(in) / SCALE;
+
+        int count = readVarint(in);
+        // Every point takes at least two bytes, so a larger count cannot be genuine
+        if (count <= 0 || count > in.available() / 2) {
+            throw new IOException("Invalid point count " + count);
+        }
+
+        float[] points = new float[count * 2];
+        int x = 0;
+        int y = 0;
+        for (int i = 0; i < points.length; i += 2) {
+            x += unzigzag(readVarint(in));
+            y += unzigzag(readVarint(in));
+            points[i] = x / SCALE;
+            points[i + 1] = y / SCALE;
+        }
+        return new Stroke(points, color, width);
+    }
+
+    private static int quantize(float value)
+    {
+        return Math.round(Math.max(0, Math.min(1, value)) * SCALE);
+    }
+
+    private static int quantizePoint(float value)
+    {
+        return Math.round(Math.max(-EXTENT, Math.min(EXTENT, value)) * SCALE);
+    }
+
+    private static int zigzag(int n)
+    {
+        return (n << 1) ^ (n >> 31);
+    }
+
+    private static int unzigzag(int n)
+    {
+        return (n >>> 1) ^ -(n & 1);
+    }
+
+    private static void writeVarint(int value, OutputStream out) throws IOException
+    {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static int readVarint(InputStream in) throws IOException
+    {
+        return readVarint(readByte(in), in);
+    }
+
+    private static int readVarint(int first, InputStream in) throws IOException
+    {
+        int value = first & 0x7F;
+        int b = first;
+        for (int shift = 7; (b & 0x80) != 0; shift += 7) {
+            if (shift > 28) {
+                throw new IOException("Varint too long");
+            }
+            b = readByte(in);
+            value |= (b & 0x7F) << shift;
+        }
+        return value;
+    }
+
+    private static int readByte(InputStream in) throws IOException
+    {
+        int b = in.read();
+        if (b == -1) {
+            throw new EOFException();
+        }
+        return b;
+    }
+}
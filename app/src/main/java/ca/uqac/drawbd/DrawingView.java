@@ -11,31 +11,129 @@ import android.graphics.Path;
 import android.graphics.PorterDuff;
 import android.graphics.PorterDuffXfermode;
 import android.graphics.Shader;
+import android.net.Uri;
 import android.util.AttributeSet;
+import android.util.Log;
 import android.util.TypedValue;
 import android.view.MotionEvent;
 import android.view.View;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class DrawingView extends View
 {
-    private LinkedList<Bitmap> canvasList = new LinkedList<>();
+    public interface OnFrameChangeListener
+    {
+        void onFrameChanged(int index);
+
+        void onBusyChanged(boolean busy);
+
+        // A timeline operation ran out of memory or otherwise failed; the timeline is unchanged
+        void onTimelineFailed();
+    }
+
+    public interface OnImportListener
+    {
+        void onImportFinished(int failed);
+    }
+
+    public interface OnTweenListener
+    {
+        void onTweenFinished(int failed);
+    }
+
+    private interface TimelineOperation
+    {
+        int apply(List<Frame> frames) throws Exception;
+    }
+
+    private static class Incoming
+    {
+        final Delta delta;
+        final boolean own;
+
+        Incoming(Delta delta, boolean own)
+        {
+            this.delta = delta;
+            this.own = own;
+        }
+    }
+
+    // A local stroke shown on top of its frame until the host sends it back
+    private static class Pending
+    {
+        final Frame frame;
+        final Stroke stroke;
+        final Path path;
+        final Paint paint;
+
+        Pending(Frame frame, Stroke stroke, Paint paint)
+        {
+            this.frame = frame;
+            this.stroke = stroke;
+            this.path = Frame.path(stroke);
+            this.paint = paint;
+        }
+    }
+
+    private static final String TAG = "DrawingView";
+
+    // Each in-between is a full-screen bitmap
+    public static final int MAX_TWEENS = 24;
+
+    private LinkedList<Frame> canvasList = new LinkedList<>();
     private int index = 0;
     private int paintColor;
     private int alpha = 255;
     private float brushSize;
     private boolean line = false;
     private boolean erase = false;
+    private int brush = Delta.BRUSH_PAINT;
+    private Map<String, BitmapShader> patterns = new HashMap<>();
 
     private float lx;
     private float ly;
+    private float[] points = new float[64];
+    private int pointCount;
 
     private Path drawPath;
-    private Paint drawPaint, canvasPaint;
+    private Paint drawPaint, canvasPaint, keyPaint;
+    private float keyRadius;
     private Canvas drawing;
 
     private boolean running;
+    private boolean busy;
+    private int timelineRun;
+
+    private ExecutorService timeline = Executors.newSingleThreadExecutor();
+    private ExecutorService workers = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+    private OnFrameChangeListener frameListener;
+
+    private List<Future<?>> tweens = new ArrayList<>();
+    private int tweenRun;
+    private int tweenRemaining;
+    private int tweenFailed;
+    private OnTweenListener tweenListener;
+
+    private Future<?> importing;
+    private int importRun;
+    private int importAt;
+
+    private LiveSession session;
+    private ArrayDeque<Incoming> incoming = new ArrayDeque<>();
+    private ArrayDeque<Pending> pending = new ArrayDeque<>();
+    private boolean applying;
+    private int nextFrameId;
 
     public DrawingView(Context context, AttributeSet attrs)
     {
@@ -51,6 +149,9 @@ public class DrawingView extends View
         drawPaint.setStrokeJoin(Paint.Join.ROUND);
         drawPaint.setStrokeCap(Paint.Cap.ROUND);
         canvasPaint = new Paint(Paint.DITHER_FLAG);
+        keyPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        keyPaint.setColor(getResources().getColor(R.color.keyframe));
+        keyRadius = TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, 6, getResources().getDisplayMetrics());
     }
 
     @Override
@@ -59,6 +160,17 @@ public class DrawingView extends View
         super.onSizeChanged(w, h, oldw, oldh);
 
         clear(w, h);
+        // The frames were sized for the old canvas, so every peer starts over with this device
+        send(Delta.clear());
+    }
+
+    @Override
+    protected void onDetachedFromWindow()
+    {
+        super.onDetachedFromWindow();
+
+        timeline.shutdownNow();
+        workers.shutdownNow();
     }
 
     @Override
@@ -66,17 +178,25 @@ public class DrawingView extends View
     {
         if (!running && index > 0) {
             canvasPaint.setAlpha(100);
-            canvas.drawBitmap(canvasList.get(index-1), 0, 0, canvasPaint);
+            canvas.drawBitmap(canvasList.get(index-1).bitmap, 0, 0, canvasPaint);
         }
         canvasPaint.setAlpha(255);
-        canvas.drawBitmap(canvasList.get(index), 0, 0, canvasPaint);
+        canvas.drawBitmap(canvasList.get(index).bitmap, 0, 0, canvasPaint);
+        for (Pending stroke : pending) {
+            if (stroke.frame == canvasList.get(index)) {
+                canvas.drawPath(stroke.path, stroke.paint);
+            }
+        }
         canvas.drawPath(drawPath, drawPaint);
+        if (!running && canvasList.get(index).key) {
+            canvas.drawCircle(getWidth() - keyRadius * 3, keyRadius * 3, keyRadius, keyPaint);
+        }
     }
 
     @Override
     public boolean onTouchEvent(MotionEvent event)
     {
-        if (!running) {
+        if (!running && !busy) {
             float touchX = event.getX();
             float touchY = event.getY();
 
@@ -85,22 +205,31 @@ public class DrawingView extends View
                     drawPath.moveTo(touchX, touchY);
                     lx = touchX;
                     ly = touchY;
+                    pointCount = 0;
+                    addPoint(touchX, touchY);
                     break;
                 case MotionEvent.ACTION_MOVE:
                     if (line) {
                         drawPath.reset();
                         drawPath.moveTo(lx, ly);
+                        pointCount = 2;
                     }
                     drawPath.lineTo(touchX, touchY);
+                    addPoint(touchX, touchY);
                     break;
                 case MotionEvent.ACTION_UP:
                     if (line) {
                         drawPath.reset();
                         drawPath.moveTo(lx, ly);
+                        pointCount = 2;
                     }
                     drawPath.lineTo(touchX, touchY);
-                    drawing.drawPath(drawPath, drawPaint);
+                    addPoint(touchX, touchY);
+                    if (session == null) {
+                        drawing.drawPath(drawPath, drawPaint);
+                    }
                     drawPath.reset();
+                    record();
                     break;
                 default:
                     return false;
@@ -112,6 +241,45 @@ public class DrawingView extends View
         return true;
     }
 
+    private void addPoint(float x, float y)
+    {
+        if (pointCount + 2 > points.length) {
+            points = Arrays.copyOf(points, points.length * 2);
+        }
+        points[pointCount++] = x;
+        points[pointCount++] = y;
+    }
+
+    private void record()
+    {
+        Frame frame = canvasList.get(index);
+        Stroke stroke = new Stroke(Arrays.copyOf(points, pointCount), drawPaint.getColor(), brushSize);
+        int kind = erase ? Delta.BRUSH_ERASE : brush;
+        if (session != null) {
+            pending.add(new Pending(frame, stroke, new Paint(drawPaint)));
+            session.send(Delta.stroke(frame.id, stroke.scale(1f / getWidth(), 1f / getHeight()), kind));
+            return;
+        }
+
+        if (kind != Delta.BRUSH_PAINT) {
+            frame.vector = false;
+        } else if (frame.vector) {
+            frame.strokes.add(stroke);
+        }
+    }
+
+    private BitmapShader pattern(String name)
+    {
+        BitmapShader shader = patterns.get(name);
+        if (shader == null) {
+            int id = getResources().getIdentifier(name, "drawable", "ca.uqac.drawbd");
+            Bitmap pattern = BitmapFactory.decodeResource(getResources(), id);
+            shader = new BitmapShader(pattern, Shader.TileMode.REPEAT, Shader.TileMode.REPEAT);
+            patterns.put(name, shader);
+        }
+        return shader;
+    }
+
     public void setColor(String newColor)
     {
         invalidate();
@@ -121,13 +289,12 @@ public class DrawingView extends View
             drawPaint.setColor(paintColor);
             drawPaint.setAlpha(alpha);
             drawPaint.setShader(null);
+            brush = Delta.BRUSH_PAINT;
         } else {
-            int id = getResources().getIdentifier(newColor, "drawable", "ca.uqac.drawbd");
-            Bitmap pattern = BitmapFactory.decodeResource(getResources(), id);
-            BitmapShader shader = new BitmapShader(pattern, Shader.TileMode.REPEAT, Shader.TileMode.REPEAT);
             drawPaint.setColor(0xFFFFFFFF);
-            drawPaint.setShader(shader);
+            drawPaint.setShader(pattern(newColor));
             drawPaint.setAlpha(alpha);
+            brush = Delta.BRUSH_PATTERN + Integer.parseInt(newColor.substring("pattern_".length())) - 1;
         }
     }
 
@@ -170,9 +337,13 @@ public class DrawingView extends View
 
     public int prev()
     {
+        if (busy) {
+            return index;
+        }
+
         if (index > 0) {
             index--;
-            drawing = new Canvas(canvasList.get(index));
+            drawing = new Canvas(canvasList.get(index).bitmap);
         }
         invalidate();
         return index;
@@ -180,48 +351,97 @@ public class DrawingView extends View
 
     public int next()
     {
-        if (++index == canvasList.size()) {
-            canvasList.add(Bitmap.createBitmap(getWidth(), getHeight(), Bitmap.Config.ARGB_8888));
+        if (busy) {
+            return index;
+        }
+
+        if (index + 1 == canvasList.size()) {
+            if (send(Delta.insertBlank(index + 1, 1))) {
+                return index;
+            }
+            canvasList.add(Frame.blank(getWidth(), getHeight()));
         }
-        drawing = new Canvas(canvasList.get(index));
+        index++;
+        drawing = new Canvas(canvasList.get(index).bitmap);
         invalidate();
         return index;
     }
 
     public int copy()
     {
-        Bitmap bmp = canvasList.get(index++);
-        canvasList.add(index, bmp.copy(bmp.getConfig(), true));
-        drawing = new Canvas(canvasList.get(index));
+        if (busy) {
+            return index;
+        }
+
+        if (send(Delta.duplicate(index, index))) {
+            return index;
+        }
+
+        Frame frame = canvasList.get(index++);
+        canvasList.add(index, frame.copy());
+        drawing = new Canvas(canvasList.get(index).bitmap);
         return index;
     }
 
     public int delete()
     {
+        if (busy) {
+            return index;
+        }
+
+        if (send(Delta.delete(index, index))) {
+            return index;
+        }
+
         canvasList.remove(index);
         if (index == canvasList.size()) {
             index--;
         }
         if (index < 0) {
-            canvasList.add(Bitmap.createBitmap(getWidth(), getHeight(), Bitmap.Config.ARGB_8888));
+            canvasList.add(Frame.blank(getWidth(), getHeight()));
             index++;
         }
-        drawing = new Canvas(canvasList.get(index));
+        drawing = new Canvas(canvasList.get(index).bitmap);
         invalidate();
         return index;
     }
 
-    public void clear()
+    public boolean clear()
     {
-        clear(getWidth(), getHeight());
+        if (busy) {
+            return false;
+        }
+
+        if (!send(Delta.clear())) {
+            clear(getWidth(), getHeight());
+        }
+        return true;
     }
 
     public void clear(int w, int h)
     {
+        // A range operation still in flight must not put its old snapshot back
+        timelineRun++;
+
+        if (!tweens.isEmpty()) {
+            stopTween();
+            tweens.clear();
+            setBusy(false);
+        }
+
+        if (importing != null) {
+            importing.cancel(true);
+            importRun++;
+            importing = null;
+            setBusy(false);
+        }
+
         index = 0;
         canvasList.clear();
-        canvasList.add(Bitmap.createBitmap(w, h, Bitmap.Config.ARGB_8888));
-        drawing = new Canvas(canvasList.getFirst());
+        canvasList.add(Frame.blank(w, h));
+        nextFrameId = 0;
+        number();
+        drawing = new Canvas(canvasList.getFirst().bitmap);
         invalidate();
     }
 
@@ -230,8 +450,608 @@ public class DrawingView extends View
         return index;
     }
 
+    public int frameCount()
+    {
+        return canvasList.size();
+    }
+
+    // Also true while a sequenced session edit is swapping in a new timeline
+    public boolean isBusy()
+    {
+        return busy || applying;
+    }
+
+    private void setBusy(boolean busy)
+    {
+        this.busy = busy;
+        if (frameListener != null) {
+            frameListener.onBusyChanged(busy);
+        }
+    }
+
+    public void setOnFrameChangeListener(OnFrameChangeListener listener)
+    {
+        frameListener = listener;
+    }
+
+    public boolean duplicateRange(int from, int to)
+    {
+        return submit(Delta.duplicate(from, to));
+    }
+
+    public boolean moveRange(int from, int to, int target)
+    {
+        return submit(Delta.move(from, to, target));
+    }
+
+    public boolean reverseRange(int from, int to)
+    {
+        return submit(Delta.reverse(from, to));
+    }
+
+    public boolean deleteRange(int from, int to)
+    {
+        return submit(Delta.delete(from, to));
+    }
+
+    public boolean insertBlank(int at, int count)
+    {
+        return submit(Delta.insertBlank(at, count));
+    }
+
+    public boolean toggleKeyframe()
+    {
+        Frame frame = canvasList.get(index);
+        frame.key = !frame.key;
+        invalidate();
+        return frame.key;
+    }
+
+    public boolean isTweening()
+    {
+        return !tweens.isEmpty();
+    }
+
+    // Generated and imported frames are raster data a peer cannot rebuild from deltas
+    public boolean tween(int count, OnTweenListener listener)
+    {
+        if (running || busy || session != null || count <= 0 || count > MAX_TWEENS) {
+            return false;
+        }
+
+        Frame from = null;
+        Frame to = null;
+        for (Frame frame : canvasList) {
+            if (frame.key) {
+                if (from == null) {
+                    from = frame;
+                } else {
+                    to = frame;
+                    break;
+                }
+            }
+        }
+
+        if (to == null) {
+            return false;
+        }
+
+        setBusy(true);
+        tweenRemaining = count;
+        tweenFailed = 0;
+        tweenListener = listener;
+
+        final int run = ++tweenRun;
+        final Frame last = to;
+        final boolean[] inserted = new boolean[count];
+
+        for (int k = 0; k < count; k++) {
+            final int slot = k;
+            final Tween tween = new Tween(from, to, (float) (k + 1) / (count + 1));
+            tweens.add(workers.submit(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    Frame result = null;
+                    try {
+                        result = tween.call();
+                    } catch (InterruptedException e) {
+                        return;
+                    } catch (Exception | OutOfMemoryError e) {
+                        Log.e(TAG, "In-between generation failed", e);
+                    }
+
+                    final Frame frame = result;
+                    post(new Runnable()
+                    {
+                        @Override
+                        public void run()
+                        {
+                            insertTween(run, last, inserted, slot, frame);
+                        }
+                    });
+                }
+            }));
+        }
+
+        return true;
+    }
+
+    public void cancelTween()
+    {
+        if (tweens.isEmpty()) {
+            return;
+        }
+
+        stopTween();
+        finishTween();
+    }
+
+    private void stopTween()
+    {
+        for (Future<?> future : tweens) {
+            future.cancel(true);
+        }
+        tweenRun++;
+    }
+
+    // In-betweens go right before the second keyframe, after any frames between the keyframes
+    private void insertTween(int run, Frame last, boolean[] inserted, int slot, Frame frame)
+    {
+        if (run != tweenRun) {
+            return;
+        }
+
+        if (frame != null) {
+            int at = canvasList.indexOf(last);
+            for (int i = slot + 1; i < inserted.length; i++) {
+                if (inserted[i]) {
+                    at--;
+                }
+            }
+            inserted[slot] = true;
+
+            canvasList.add(at, frame);
+            if (at <= index) {
+                index++;
+            }
+            invalidate();
+        } else {
+            tweenFailed++;
+        }
+
+        if (--tweenRemaining == 0) {
+            finishTween();
+            tweenListener.onTweenFinished(tweenFailed);
+        } else if (frameListener != null) {
+            frameListener.onFrameChanged(index);
+        }
+    }
+
+    private void finishTween()
+    {
+        tweens.clear();
+        setBusy(false);
+        for (Frame frame : canvasList) {
+            frame.key = false;
+        }
+        if (frameListener != null) {
+            frameListener.onFrameChanged(index);
+        }
+        drain();
+    }
+
+    public boolean isImporting()
+    {
+        return importing != null;
+    }
+
+    public boolean importFrames(List<Uri> uris, final OnImportListener listener)
+    {
+        if (running || busy || session != null || uris.isEmpty()) {
+            return false;
+        }
+
+        setBusy(true);
+        importAt = index + 1;
+
+        final int run = ++importRun;
+
+        importing = timeline.submit(new FrameImporter(getContext().getContentResolver(), uris, getWidth(), getHeight(), workers, new FrameImporter.Sink()
+        {
+            @Override
+            public void frame(final Frame frame)
+            {
+                post(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        if (run != importRun) {
+                            frame.bitmap.recycle();
+                            return;
+                        }
+                        canvasList.add(importAt++, frame);
+                        invalidate();
+                        if (frameListener != null) {
+                            frameListener.onFrameChanged(index);
+                        }
+                    }
+                });
+            }
+
+            @Override
+            public void done(final int failed)
+            {
+                post(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        if (run == importRun) {
+                            finishImport();
+                            listener.onImportFinished(failed);
+                        }
+                    }
+                });
+            }
+        }));
+
+        return true;
+    }
+
+    public void cancelImport()
+    {
+        if (importing == null) {
+            return;
+        }
+
+        importing.cancel(true);
+        importRun++;
+        finishImport();
+    }
+
+    private void finishImport()
+    {
+        importing = null;
+        setBusy(false);
+        if (frameListener != null) {
+            frameListener.onFrameChanged(index);
+        }
+        drain();
+    }
+
+    // Deltas received before the session is set wait until then, so they apply to the cleared timeline
+    public void setSession(LiveSession session)
+    {
+        this.session = session;
+        drain();
+
+        // Strokes the host never sent back stay on this device. Anything still queued, their
+        // echoes included, belongs to the session that ended.
+        if (session == null) {
+            incoming.clear();
+            for (Pending stroke : pending) {
+                stroke.frame.draw(stroke.stroke, stroke.paint);
+                stroke.frame.vector = false;
+            }
+            pending.clear();
+            invalidate();
+        }
+    }
+
+    // Safe to call from any thread; deltas are applied in the order the host sequenced them
+    public void receive(final List<Delta> deltas, final boolean own)
+    {
+        post(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                for (Delta delta : deltas) {
+                    incoming.add(new Incoming(delta, own));
+                }
+                drain();
+            }
+        });
+    }
+
+    // In a session every edit, this device's included, waits for its turn in the host's order
+    private boolean send(Delta delta)
+    {
+        if (session == null) {
+            return false;
+        }
+        session.send(delta);
+        return true;
+    }
+
+    private void drain()
+    {
+        if (session == null || running || busy || applying || incoming.isEmpty()) {
+            return;
+        }
+
+        while (!applying && !incoming.isEmpty()) {
+            apply(incoming.poll());
+        }
+        refresh();
+    }
+
+    private void refresh()
+    {
+        index = Math.min(index, canvasList.size() - 1);
+        drawing = new Canvas(canvasList.get(index).bitmap);
+        invalidate();
+        if (frameListener != null) {
+            frameListener.onFrameChanged(index);
+        }
+    }
+
+    private void apply(Incoming next)
+    {
+        Delta delta = next.delta;
+        switch (delta.getType()) {
+            case Delta.STROKE:
+                if (next.own) {
+                    pending.poll();
+                }
+                applyStroke(delta);
+                break;
+            case Delta.CLEAR:
+                clear(getWidth(), getHeight());
+                break;
+            default:
+                TimelineOperation operation = operation(delta);
+                if (operation == null) {
+                    Log.w(TAG, "Dropped delta " + delta.getType() + " out of timeline range");
+                    return;
+                }
+                execute(operation, true, next.own);
+                break;
+        }
+    }
+
+    // Frames are numbered in timeline order once the edit that made them is applied,
+    // which every device does in the same sequence
+    private void number()
+    {
+        nextFrameId = Timeline.number(canvasList, nextFrameId);
+    }
+
+    private void applyStroke(Delta delta)
+    {
+        Frame frame = Timeline.find(canvasList, delta.getFrame());
+        if (frame == null) {
+            Log.w(TAG, "Dropped stroke on missing frame " + delta.getFrame());
+            return;
+        }
+
+        Stroke stroke = delta.getStroke().scale(getWidth(), getHeight());
+        if (delta.getBrush() == Delta.BRUSH_PAINT) {
+            frame.draw(stroke);
+            return;
+        }
+
+        Paint paint = Frame.paint(stroke);
+        if (delta.getBrush() == Delta.BRUSH_ERASE) {
+            paint.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.CLEAR));
+        } else {
+            paint.setShader(pattern("pattern_" + (delta.getBrush() - Delta.BRUSH_PATTERN + 1)));
+        }
+        frame.draw(stroke, paint);
+        frame.vector = false;
+    }
+
+    private boolean isRange(int from, int to)
+    {
+        return Timeline.isRange(canvasList.size(), from, to);
+    }
+
+    // Returns null when the delta does not fit the current timeline
+    private TimelineOperation operation(Delta delta)
+    {
+        final int from = delta.getFrom();
+        final int to = delta.getTo();
+        final int w = getWidth();
+        final int h = getHeight();
+
+        switch (delta.getType()) {
+            case Delta.DUPLICATE:
+                if (!isRange(from, to)) {
+                    return null;
+                }
+                return new TimelineOperation()
+                {
+                    @Override
+                    public int apply(List<Frame> frames) throws Exception
+                    {
+                        return Timeline.duplicate(frames, to, copies(frames.subList(from, to + 1)));
+                    }
+                };
+            case Delta.MOVE:
+                final int target = delta.getTarget();
+                if (!Timeline.canMove(canvasList.size(), from, to, target)) {
+                    return null;
+                }
+                return new TimelineOperation()
+                {
+                    @Override
+                    public int apply(List<Frame> frames)
+                    {
+                        return Timeline.move(frames, from, to, target);
+                    }
+                };
+            case Delta.REVERSE:
+                if (!isRange(from, to)) {
+                    return null;
+                }
+                final int current = index;
+                return new TimelineOperation()
+                {
+                    @Override
+                    public int apply(List<Frame> frames)
+                    {
+                        Timeline.reverse(frames, from, to);
+                        return current;
+                    }
+                };
+            case Delta.DELETE:
+                if (!isRange(from, to)) {
+                    return null;
+                }
+                return new TimelineOperation()
+                {
+                    @Override
+                    public int apply(List<Frame> frames) throws Exception
+                    {
+                        return Timeline.delete(frames, from, to, new Callable<Frame>()
+                        {
+                            @Override
+                            public Frame call()
+                            {
+                                return Frame.blank(w, h);
+                            }
+                        });
+                    }
+                };
+            case Delta.INSERT_BLANK:
+                final int count = delta.getCount();
+                if (from < 0 || from > canvasList.size() || count <= 0) {
+                    return null;
+                }
+                return new TimelineOperation()
+                {
+                    @Override
+                    public int apply(List<Frame> frames) throws Exception
+                    {
+                        return Timeline.insert(frames, from, blanks(count, w, h));
+                    }
+                };
+            default:
+                return null;
+        }
+    }
+
+    private boolean submit(Delta delta)
+    {
+        TimelineOperation operation = operation(delta);
+        if (running || busy || operation == null) {
+            return false;
+        }
+
+        if (!send(delta)) {
+            execute(operation, false, true);
+        }
+        return true;
+    }
+
+    // A sequenced edit leaves the timeline usable while it runs; later deltas queue behind it.
+    // Unless follow is set the view stays on the frame it was showing.
+    private void execute(final TimelineOperation operation, final boolean sequenced, final boolean follow)
+    {
+        if (sequenced) {
+            applying = true;
+        } else {
+            setBusy(true);
+        }
+
+        final int run = timelineRun;
+        final List<Frame> frames = new ArrayList<>(canvasList);
+
+        timeline.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                int result;
+                try {
+                    result = operation.apply(frames);
+                } catch (Exception | OutOfMemoryError e) {
+                    Log.e(TAG, "Timeline operation failed", e);
+                    result = -1;
+                }
+
+                final int frame = result;
+                post(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        if (sequenced) {
+                            applying = false;
+                        } else {
+                            setBusy(false);
+                        }
+                        if (frame < 0 && frameListener != null) {
+                            frameListener.onTimelineFailed();
+                        }
+                        if (frame >= 0 && run == timelineRun) {
+                            Frame current = canvasList.get(index);
+                            canvasList = new LinkedList<>(frames);
+                            number();
+                            if (follow) {
+                                index = frame;
+                            } else if (canvasList.indexOf(current) >= 0) {
+                                index = canvasList.indexOf(current);
+                            }
+                        }
+                        refresh();
+                        drain();
+                    }
+                });
+            }
+        });
+    }
+
+    private List<Frame> copies(List<Frame> sources) throws Exception
+    {
+        List<Callable<Frame>> tasks = new ArrayList<>(sources.size());
+        for (final Frame source : sources) {
+            tasks.add(new Callable<Frame>()
+            {
+                @Override
+                public Frame call()
+                {
+                    return source.copy();
+                }
+            });
+        }
+        return allocate(tasks);
+    }
+
+    private List<Frame> blanks(int count, final int w, final int h) throws Exception
+    {
+        List<Callable<Frame>> tasks = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            tasks.add(new Callable<Frame>()
+            {
+                @Override
+                public Frame call()
+                {
+                    return Frame.blank(w, h);
+                }
+            });
+        }
+        return allocate(tasks);
+    }
+
+    private List<Frame> allocate(List<Callable<Frame>> tasks) throws Exception
+    {
+        List<Frame> frames = new ArrayList<>(tasks.size());
+        for (Future<Frame> future : workers.invokeAll(tasks)) {
+            frames.add(future.get());
+        }
+        return frames;
+    }
+
     public boolean startAnimationFrom(int from)
     {
+        if (isBusy()) {
+            return false;
+        }
+
         if (from < canvasList.size()) {
             index = from;
         }
@@ -246,6 +1066,7 @@ public class DrawingView extends View
     public void stop()
     {
         running = false;
+        drain();
     }
 
     public boolean nextFrame()
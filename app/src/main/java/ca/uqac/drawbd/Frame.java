@@ -0,0 +1,77 @@
+package ca.uqac.drawbd;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Path;
+
+import java.util.ArrayList;
+import java.util.List;
+
+class Frame
+{
+    final Bitmap bitmap;
+    final List<Stroke> strokes = new ArrayList<>();
+
+    // True while the bitmap holds nothing but the recorded strokes
+    boolean vector = true;
+    boolean key;
+
+    // Stays with the frame when the timeline is edited, so live peers can address it by id
+    int id = -1;
+
+    Frame(Bitmap bitmap)
+    {
+        this.bitmap = bitmap;
+    }
+
+    static Frame blank(int w, int h)
+    {
+        return new Frame(Bitmap.createBitmap(w, h, Bitmap.Config.ARGB_8888));
+    }
+
+    Frame copy()
+    {
+        Frame frame = new Frame(bitmap.copy(bitmap.getConfig(), true));
+        frame.strokes.addAll(strokes);
+        frame.vector = vector;
+        return frame;
+    }
+
+    void draw(Stroke stroke)
+    {
+        draw(stroke, paint(stroke));
+        strokes.add(stroke);
+    }
+
+    void draw(Stroke stroke, Paint paint)
+    {
+        new Canvas(bitmap).drawPath(path(stroke), paint);
+    }
+
+    static Paint paint(Stroke stroke)
+    {
+        Paint paint = new Paint();
+        paint.setAntiAlias(true);
+        paint.setStyle(Paint.Style.STROKE);
+        paint.setStrokeJoin(Paint.Join.ROUND);
+        paint.setStrokeCap(Paint.Cap.ROUND);
+        paint.setColor(stroke.getColor());
+        paint.setStrokeWidth(stroke.getWidth());
+        return paint;
+    }
+
+    static Path path(Stroke stroke)
+    {
+        float[] points = stroke.getPoints();
+        Path path = new Path();
+        path.moveTo(points[0], points[1]);
+        for (int i = 2; i < points.length; i += 2) {
+            path.lineTo(points[i], points[i + 1]);
+        }
+        if (points.length == 2) {
+            path.lineTo(points[0], points[1]);
+        }
+        return path;
+    }
+}
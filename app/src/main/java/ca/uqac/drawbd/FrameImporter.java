@@ -0,0 +1,237 @@
+package ca.uqac.drawbd;
+
+import android.content.ContentResolver;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Movie;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.net.Uri;
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+class FrameImporter implements Runnable
+{
+    interface Sink
+    {
+        void frame(Frame frame);
+
+        // Called once, with the number of files that could not be read
+        void done(int failed);
+    }
+
+    private static final String TAG = "FrameImporter";
+
+    // GIF frames are sampled at the playback speed of MainActivity
+    private static final int GIF_FRAME_MS = 100;
+
+    // Decoded frames in flight at once, whatever the length of the source
+    private static final int WINDOW = Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors()));
+
+    private final ContentResolver resolver;
+    private final List<Uri> uris;
+    private final int width;
+    private final int height;
+    private final ExecutorService workers;
+    private final Sink sink;
+    private int failed;
+
+    FrameImporter(ContentResolver resolver, List<Uri> uris, int width, int height, ExecutorService workers, Sink sink)
+    {
+        this.resolver = resolver;
+        this.uris = uris;
+        this.width = width;
+        this.height = height;
+        this.workers = workers;
+        this.sink = sink;
+    }
+
+    @Override
+    public void run()
+    {
+        ArrayDeque<Future<Frame>> pending = new ArrayDeque<>(WINDOW);
+        try {
+            for (final Uri uri : uris) {
+                if ("image/gif".equals(resolver.getType(uri))) {
+                    // Frames before the GIF keep their place in the timeline
+                    while (!pending.isEmpty()) {
+                        deliver(pending.poll());
+                    }
+                    importGif(uri);
+                    continue;
+                }
+                if (pending.size() == WINDOW) {
+                    deliver(pending.poll());
+                }
+                pending.add(workers.submit(new Callable<Frame>()
+                {
+                    @Override
+                    public Frame call() throws IOException
+                    {
+                        return decode(uri);
+                    }
+                }));
+            }
+            while (!pending.isEmpty()) {
+                deliver(pending.poll());
+            }
+        } catch (InterruptedException e) {
+            Log.i(TAG, "Import cancelled");
+        } finally {
+            for (Future<Frame> future : pending) {
+                future.cancel(true);
+            }
+            sink.done(failed);
+        }
+    }
+
+    private void deliver(Future<Frame> future) throws InterruptedException
+    {
+        Frame frame;
+        try {
+            frame = future.get();
+        } catch (ExecutionException e) {
+            Log.w(TAG, "Skipping unreadable image", e.getCause());
+            failed++;
+            return;
+        }
+        deliver(frame);
+    }
+
+    private void importGif(Uri uri) throws InterruptedException
+    {
+        try {
+            decodeGif(uri);
+        } catch (IOException | RuntimeException | OutOfMemoryError e) {
+            Log.w(TAG, "Skipping unreadable GIF " + uri, e);
+            failed++;
+        }
+    }
+
+    private void decodeGif(Uri uri) throws IOException, InterruptedException
+    {
+        byte[] data = read(uri);
+        Movie movie = Movie.decodeByteArray(data, 0, data.length);
+        if (movie == null || movie.width() <= 0 || movie.height() <= 0) {
+            throw new IOException("Unreadable GIF " + uri);
+        }
+
+        Bitmap buffer = Bitmap.createBitmap(movie.width(), movie.height(), Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(buffer);
+        int duration = Math.max(movie.duration(), 1);
+        try {
+            for (int time = 0; time < duration; time += GIF_FRAME_MS) {
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                buffer.eraseColor(0);
+                movie.setTime(time);
+                movie.draw(canvas, 0, 0);
+                deliver(fit(buffer));
+            }
+        } finally {
+            buffer.recycle();
+        }
+    }
+
+    private void deliver(Frame frame) throws InterruptedException
+    {
+        if (Thread.interrupted()) {
+            frame.bitmap.recycle();
+            throw new InterruptedException();
+        }
+        sink.frame(frame);
+    }
+
+    private Frame decode(Uri uri) throws IOException
+    {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        InputStream in = open(uri);
+        try {
+            BitmapFactory.decodeStream(in, null, options);
+        } finally {
+            in.close();
+        }
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            throw new IOException("Unreadable image " + uri);
+        }
+
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize(options.outWidth, options.outHeight);
+        Bitmap decoded;
+        in = open(uri);
+        try {
+            decoded = BitmapFactory.decodeStream(in, null, options);
+        } finally {
+            in.close();
+        }
+        if (decoded == null) {
+            throw new IOException("Unreadable image " + uri);
+        }
+
+        try {
+            return fit(decoded);
+        } finally {
+            decoded.recycle();
+        }
+    }
+
+    private int sampleSize(int w, int h)
+    {
+        int sample = 1;
+        while (w / (sample * 2) >= width && h / (sample * 2) >= height) {
+            sample *= 2;
+        }
+        return sample;
+    }
+
+    private Frame fit(Bitmap source)
+    {
+        float scale = Math.min((float) width / source.getWidth(), (float) height / source.getHeight());
+        int w = Math.round(source.getWidth() * scale);
+        int h = Math.round(source.getHeight() * scale);
+        int left = (width - w) / 2;
+        int top = (height - h) / 2;
+
+        Frame frame = Frame.blank(width, height);
+        new Canvas(frame.bitmap).drawBitmap(source, null, new Rect(left, top, left + w, top + h), new Paint(Paint.FILTER_BITMAP_FLAG));
+        frame.vector = false;
+        return frame;
+    }
+
+    private byte[] read(Uri uri) throws IOException
+    {
+        InputStream in = open(uri);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] chunk = new byte[16 * 1024];
+            int n;
+            while ((n = in.read(chunk)) != -1) {
+                out.write(chunk, 0, n);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    private InputStream open(Uri uri) throws IOException
+    {
+        InputStream in = resolver.openInputStream(uri);
+        if (in == null) {
+            throw new IOException("Cannot open " + uri);
+        }
+        return in;
+    }
+}
@@ -0,0 +1,334 @@
+package ca.uqac.drawbd;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class LiveSession
+{
+    public interface Listener
+    {
+        // Called on a session thread, in the order the host sequenced the deltas; own is true for
+        // the echo of a batch this device sent, which it must apply at that point and not before
+        void onDeltas(List<Delta> deltas, boolean own);
+
+        void onPeerConnected();
+
+        void onClosed(IOException cause);
+    }
+
+    public static final int DEFAULT_PORT = 4747;
+
+    // Deltas committed within one display frame travel in one batch
+    private static final int BATCH_MS = 16;
+    private static final int CONNECT_TIMEOUT_MS = 5000;
+
+    // Every batch from the host starts with one of these
+    private static final int RELAYED = 0;
+    private static final int ECHO = 1;
+
+    private final Listener listener;
+    private final ServerSocket server;
+    private final List<Peer> peers = new CopyOnWriteArrayList<>();
+    private final BlockingQueue<Delta> outgoing = new LinkedBlockingQueue<>();
+    private final ExecutorService threads = Executors.newCachedThreadPool();
+
+    // Every batch the host has sequenced, replayed to peers that join late
+    private final List<byte[]> journal;
+
+    private final AtomicLong bytesSent = new AtomicLong();
+    private final AtomicLong deltasSent = new AtomicLong();
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    private LiveSession(ServerSocket server, Listener listener)
+    {
+        this.server = server;
+        this.listener = listener;
+        this.journal = server != null ? new ArrayList<byte[]>() : null;
+
+        threads.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                sendLoop();
+            }
+        });
+    }
+
+    public static LiveSession host(int port, Listener listener) throws IOException
+    {
+        final LiveSession session = new LiveSession(new ServerSocket(port), listener);
+        session.threads.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                session.acceptLoop();
+            }
+        });
+        return session;
+    }
+
+    public static LiveSession join(String host, int port, Listener listener) throws IOException
+    {
+        Socket socket = new Socket();
+        try {
+            socket.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT_MS);
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+
+        LiveSession session = new LiveSession(null, listener);
+        session.add(new Peer(socket));
+        return session;
+    }
+
+    public boolean isHost()
+    {
+        return server != null;
+    }
+
+    public int getPort()
+    {
+        return server != null ? server.getLocalPort() : -1;
+    }
+
+    public int getPeerCount()
+    {
+        return peers.size();
+    }
+
+    public long getBytesSent()
+    {
+        return bytesSent.get();
+    }
+
+    public long getDeltasSent()
+    {
+        return deltasSent.get();
+    }
+
+    public void send(Delta delta)
+    {
+        if (!closed.get()) {
+            outgoing.add(delta);
+        }
+    }
+
+    public void close()
+    {
+        close(null);
+    }
+
+    private void close(IOException cause)
+    {
+        // Send and receive threads can fail together; only the first one closes
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+
+        if (server != null) {
+            try {
+                server.close();
+            } catch (IOException ignored) {
+            }
+        }
+        for (Peer peer : peers) {
+            peer.close();
+        }
+        threads.shutdownNow();
+
+        listener.onClosed(cause);
+    }
+
+    private void acceptLoop()
+    {
+        while (!closed.get()) {
+            Socket socket;
+            try {
+                socket = server.accept();
+            } catch (IOException e) {
+                close(closed.get() ? null : e);
+                return;
+            }
+
+            // A peer that drops during its handshake must not end the session for everyone
+            Peer peer = null;
+            try {
+                peer = new Peer(socket);
+                synchronized (this) {
+                    for (byte[] batch : journal) {
+                        peer.write(RELAYED, batch);
+                    }
+                    add(peer);
+                }
+            } catch (IOException e) {
+                if (peer != null) {
+                    peers.remove(peer);
+                    peer.close();
+                } else {
+                    try {
+                        socket.close();
+                    } catch (IOException ignored) {
+                    }
+                }
+                continue;
+            }
+            listener.onPeerConnected();
+        }
+    }
+
+    private void add(final Peer peer) throws IOException
+    {
+        peer.socket.setTcpNoDelay(true);
+        peers.add(peer);
+        threads.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                receiveLoop(peer);
+            }
+        });
+    }
+
+    private void sendLoop()
+    {
+        List<Delta> batch = new ArrayList<>();
+        try {
+            while (!closed.get()) {
+                batch.add(outgoing.take());
+                Thread.sleep(BATCH_MS);
+                outgoing.drainTo(batch);
+
+                byte[] data = DeltaCodec.encode(batch);
+                if (isHost()) {
+                    sequence(data, new ArrayList<>(batch), null);
+                } else {
+                    for (Peer host : peers) {
+                        host.write(data);
+                        bytesSent.addAndGet(data.length);
+                    }
+                }
+
+                deltasSent.addAndGet(batch.size());
+                batch.clear();
+            }
+        } catch (InterruptedException ignored) {
+        } catch (IOException e) {
+            close(e);
+        }
+    }
+
+    private void receiveLoop(Peer peer)
+    {
+        try {
+            while (true) {
+                int flag = RELAYED;
+                if (!isHost() && (flag = peer.in.read()) == -1) {
+                    break;
+                }
+                byte[] data = DeltaCodec.readBatch(peer.in);
+                if (data == null) {
+                    if (!isHost()) {
+                        throw new EOFException();
+                    }
+                    break;
+                }
+
+                List<Delta> deltas = DeltaCodec.decode(data);
+                if (isHost()) {
+                    sequence(data, deltas, peer);
+                } else {
+                    listener.onDeltas(deltas, flag == ECHO);
+                }
+            }
+            peer.close();
+            peers.remove(peer);
+            if (!isHost()) {
+                close(null);
+            }
+        } catch (IOException e) {
+            peer.close();
+            peers.remove(peer);
+            if (!isHost()) {
+                close(closed.get() ? null : e);
+            }
+        }
+    }
+
+    // The host is the only sequencer: its own batches and relayed ones reach every device,
+    // the host included, in the single order they pass through here
+    private synchronized void sequence(byte[] data, List<Delta> deltas, Peer source)
+    {
+        // A late joiner starts from a blank timeline, so nothing before a clear needs replaying
+        for (Delta delta : deltas) {
+            if (delta.getType() == Delta.CLEAR) {
+                journal.clear();
+                break;
+            }
+        }
+        journal.add(data);
+        for (Peer peer : peers) {
+            try {
+                peer.write(peer == source ? ECHO : RELAYED, data);
+                bytesSent.addAndGet(data.length);
+            } catch (IOException e) {
+                peer.close();
+                peers.remove(peer);
+            }
+        }
+        listener.onDeltas(deltas, source == null);
+    }
+
+    private static class Peer
+    {
+        final Socket socket;
+        final InputStream in;
+        final OutputStream out;
+
+        Peer(Socket socket) throws IOException
+        {
+            this.socket = socket;
+            this.in = new BufferedInputStream(socket.getInputStream());
+            this.out = new BufferedOutputStream(socket.getOutputStream());
+        }
+
+        synchronized void write(byte[] batch) throws IOException
+        {
+            DeltaCodec.writeBatch(batch, out);
+            out.flush();
+        }
+
+        synchronized void write(int flag, byte[] batch) throws IOException
+        {
+            out.write(flag);
+            write(batch);
+        }
+
+        void close()
+        {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+}
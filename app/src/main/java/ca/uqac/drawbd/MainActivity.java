@@ -3,22 +3,31 @@ package ca.uqac.drawbd;
 import android.Manifest;
 import android.app.AlertDialog;
 import android.app.Dialog;
+import android.content.ClipData;
 import android.content.DialogInterface;
+import android.content.Intent;
 import android.content.pm.ActivityInfo;
 import android.content.pm.PackageManager;
 import android.content.res.Configuration;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Build;
 import android.os.Bundle;
 import android.os.Handler;
 import android.provider.MediaStore;
+import android.provider.OpenableColumns;
 import android.support.annotation.NonNull;
 import android.support.v4.app.ActivityCompat;
 import android.support.v4.content.ContextCompat;
 import android.support.v7.app.AppCompatActivity;
 import android.support.v7.widget.Toolbar;
+import android.text.InputType;
+import android.text.TextUtils;
 import android.util.Log;
 import android.view.View;
 import android.view.View.OnClickListener;
 import android.widget.Button;
+import android.widget.EditText;
 import android.widget.ImageButton;
 import android.widget.LinearLayout;
 import android.widget.SeekBar;
@@ -26,12 +35,22 @@ import android.widget.SeekBar.OnSeekBarChangeListener;
 import android.widget.TextView;
 import android.widget.Toast;
 
+import java.io.IOException;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.NetworkInterface;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 public class MainActivity extends AppCompatActivity
 {
     private Toolbar toolbar;
-    private ImageButton btnColor, btnBrush, btnLine, btnEraser, btnOpacity, btnLockRotation, btnPrev, btnNext, btnCopy, btnDelete, btnNew, btnSave, btnAnimate;
+    private ImageButton btnColor, btnBrush, btnLine, btnEraser, btnOpacity, btnLockRotation, btnPrev, btnNext, btnCopy, btnDelete, btnRange, btnKeyframe, btnTween, btnNew, btnImport, btnSave, btnSession, btnAnimate;
     private TextView indexText;
     private DrawingView drawView;
     private boolean locked;
@@ -58,6 +77,46 @@ public class MainActivity extends AppCompatActivity
     private boolean running;
 
     private static final int PERMISSION = 1;
+    private static final int IMPORT = 2;
+
+    private LiveSession session;
+    private LiveSession.Listener sessionListener = new LiveSession.Listener()
+    {
+        @Override
+        public void onDeltas(List<Delta> deltas, boolean own)
+        {
+            drawView.receive(deltas, own);
+        }
+
+        @Override
+        public void onPeerConnected()
+        {
+            runOnUiThread(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    Toast.makeText(getApplicationContext(), "A peer joined the session.", Toast.LENGTH_SHORT).show();
+                }
+            });
+        }
+
+        @Override
+        public void onClosed(IOException cause)
+        {
+            runOnUiThread(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    session = null;
+                    drawView.setSession(null);
+                    btnSession.setImageResource(R.drawable.ic_session);
+                    Toast.makeText(getApplicationContext(), "Live session ended.", Toast.LENGTH_SHORT).show();
+                }
+            });
+        }
+    };
     private boolean writePermission;
 
     @Override
@@ -80,11 +139,46 @@ public class MainActivity extends AppCompatActivity
         btnNext = findViewById(R.id.btn_next);
         btnCopy = findViewById(R.id.btn_copy);
         btnDelete = findViewById(R.id.btn_delete);
+        btnRange = findViewById(R.id.btn_range);
+        btnKeyframe = findViewById(R.id.btn_keyframe);
+        btnTween = findViewById(R.id.btn_tween);
         btnNew = findViewById(R.id.btn_new);
+        btnImport = findViewById(R.id.btn_import);
         btnSave = findViewById(R.id.btn_save);
+        btnSession = findViewById(R.id.btn_session);
         btnAnimate = findViewById(R.id.btn_animate);
 
         drawView = findViewById(R.id.drawing);
+        drawView.setOnFrameChangeListener(new DrawingView.OnFrameChangeListener()
+        {
+            @Override
+            public void onFrameChanged(int index)
+            {
+                indexText.setText(String.valueOf(index));
+                if (!drawView.isTweening()) {
+                    btnTween.setImageResource(R.drawable.ic_tween);
+                }
+                if (!drawView.isImporting()) {
+                    btnImport.setImageResource(R.drawable.ic_import);
+                }
+            }
+
+            @Override
+            public void onBusyChanged(boolean busy)
+            {
+                btnNew.setEnabled(!busy);
+                btnSave.setEnabled(!busy);
+                btnAnimate.setEnabled(!busy);
+                btnRange.setEnabled(!busy);
+                btnSession.setEnabled(!busy);
+            }
+
+            @Override
+            public void onTimelineFailed()
+            {
+                Toast.makeText(getApplicationContext(), "Oops! The timeline could not be changed.", Toast.LENGTH_SHORT).show();
+            }
+        });
 
         btnColor.setImageDrawable(getResources().getDrawable(R.drawable.color_button_pressed));
         drawView.setColor(btnColor.getTag().toString());
@@ -300,6 +394,143 @@ public class MainActivity extends AppCompatActivity
             }
         });
 
+        btnRange.setOnClickListener(new OnClickListener()
+        {
+            @Override
+            public void onClick(View view)
+            {
+                final Dialog dialog = new Dialog(MainActivity.this);
+                dialog.setTitle(R.string.msg_frame_range);
+                dialog.setContentView(R.layout.range_chooser);
+
+                final EditText from = dialog.findViewById(R.id.range_from);
+                final EditText to = dialog.findViewById(R.id.range_to);
+                final EditText amount = dialog.findViewById(R.id.range_amount);
+
+                from.setText(String.valueOf(drawView.frame()));
+                to.setText(String.valueOf(drawView.frameCount() - 1));
+
+                dialog.findViewById(R.id.btn_range_duplicate).setOnClickListener(new OnClickListener()
+                {
+                    @Override
+                    public void onClick(View v)
+                    {
+                        rangeResult(drawView.duplicateRange(parse(from), parse(to)));
+                        dialog.dismiss();
+                    }
+                });
+
+                dialog.findViewById(R.id.btn_range_move).setOnClickListener(new OnClickListener()
+                {
+                    @Override
+                    public void onClick(View v)
+                    {
+                        rangeResult(drawView.moveRange(parse(from), parse(to), parse(amount)));
+                        dialog.dismiss();
+                    }
+                });
+
+                dialog.findViewById(R.id.btn_range_reverse).setOnClickListener(new OnClickListener()
+                {
+                    @Override
+                    public void onClick(View v)
+                    {
+                        rangeResult(drawView.reverseRange(parse(from), parse(to)));
+                        dialog.dismiss();
+                    }
+                });
+
+                dialog.findViewById(R.id.btn_range_delete).setOnClickListener(new OnClickListener()
+                {
+                    @Override
+                    public void onClick(View v)
+                    {
+                        rangeResult(drawView.deleteRange(parse(from), parse(to)));
+                        dialog.dismiss();
+                    }
+                });
+
+                dialog.findViewById(R.id.btn_range_insert).setOnClickListener(new OnClickListener()
+                {
+                    @Override
+                    public void onClick(View v)
+                    {
+                        rangeResult(drawView.insertBlank(parse(from), parse(amount)));
+                        dialog.dismiss();
+                    }
+                });
+
+                dialog.show();
+            }
+        });
+
+        btnKeyframe.setOnClickListener(new OnClickListener()
+        {
+            @Override
+            public void onClick(View view)
+            {
+                if (drawView.toggleKeyframe()) {
+                    Toast.makeText(getApplicationContext(), "Keyframe set.", Toast.LENGTH_SHORT).show();
+                } else {
+                    Toast.makeText(getApplicationContext(), "Keyframe cleared.", Toast.LENGTH_SHORT).show();
+                }
+            }
+        });
+
+        btnTween.setOnClickListener(new OnClickListener()
+        {
+            @Override
+            public void onClick(View view)
+            {
+                if (drawView.isTweening()) {
+                    drawView.cancelTween();
+                    return;
+                }
+
+                final EditText count = new EditText(MainActivity.this);
+                count.setInputType(InputType.TYPE_CLASS_NUMBER);
+                count.setText("3");
+
+                new AlertDialog.Builder(MainActivity.this)
+                        .setTitle(R.string.msg_tween_count)
+                        .setView(count)
+                        .setPositiveButton("Generate", new DialogInterface.OnClickListener()
+                        {
+                            public void onClick(DialogInterface dialog, int which)
+                            {
+                                int frames = parse(count);
+                                if (frames < 1 || frames > DrawingView.MAX_TWEENS) {
+                                    Toast.makeText(getApplicationContext(), "Choose between 1 and " + DrawingView.MAX_TWEENS + " in-betweens.", Toast.LENGTH_SHORT).show();
+                                } else if (drawView.tween(frames, new DrawingView.OnTweenListener()
+                                {
+                                    @Override
+                                    public void onTweenFinished(int failed)
+                                    {
+                                        if (failed > 0) {
+                                            Toast.makeText(getApplicationContext(), failed + " in-between(s) could not be generated; spacing is uneven.", Toast.LENGTH_SHORT).show();
+                                        }
+                                    }
+                                })) {
+                                    btnTween.setImageResource(R.drawable.ic_tween_on);
+                                } else if (session != null) {
+                                    Toast.makeText(getApplicationContext(), "Not available in a live session.", Toast.LENGTH_SHORT).show();
+                                } else {
+                                    Toast.makeText(getApplicationContext(), "Mark two keyframes first.", Toast.LENGTH_SHORT).show();
+                                }
+                                dialog.dismiss();
+                            }
+                        })
+                        .setNegativeButton("Cancel", new DialogInterface.OnClickListener()
+                        {
+                            public void onClick(DialogInterface dialog, int which)
+                            {
+                                dialog.cancel();
+                            }
+                        })
+                        .show();
+            }
+        });
+
         btnNew.setOnClickListener(new OnClickListener()
         {
             @Override
@@ -312,7 +543,9 @@ public class MainActivity extends AppCompatActivity
                         {
                             public void onClick(DialogInterface dialog, int which)
                             {
-                                drawView.clear();
+                                if (!drawView.clear()) {
+                                    Toast.makeText(getApplicationContext(), "Wait for the timeline to finish.", Toast.LENGTH_SHORT).show();
+                                }
                                 dialog.dismiss();
                             }
                         })
@@ -327,6 +560,23 @@ public class MainActivity extends AppCompatActivity
             }
         });
 
+        btnImport.setOnClickListener(new OnClickListener()
+        {
+            @Override
+            public void onClick(View view)
+            {
+                if (drawView.isImporting()) {
+                    drawView.cancelImport();
+                    return;
+                }
+
+                Intent intent = new Intent(Intent.ACTION_GET_CONTENT);
+                intent.setType("image/*");
+                intent.putExtra(Intent.EXTRA_ALLOW_MULTIPLE, true);
+                startActivityForResult(Intent.createChooser(intent, "Import frames"), IMPORT);
+            }
+        });
+
         btnSave.setOnClickListener(new OnClickListener()
         {
             @Override
@@ -345,6 +595,12 @@ public class MainActivity extends AppCompatActivity
                             {
                                 public void onClick(DialogInterface dialog, int which)
                                 {
+                                    if (drawView.isBusy()) {
+                                        Toast.makeText(getApplicationContext(), "Wait for the timeline to finish.", Toast.LENGTH_SHORT).show();
+                                        dialog.dismiss();
+                                        return;
+                                    }
+
                                     drawView.startAnimationFrom(0);
 
                                     boolean saved = true;
@@ -375,6 +631,62 @@ public class MainActivity extends AppCompatActivity
             }
         });
 
+        btnSession.setOnClickListener(new OnClickListener()
+        {
+            @Override
+            public void onClick(View view)
+            {
+                if (session != null) {
+                    new AlertDialog.Builder(MainActivity.this)
+                            .setTitle("Leave live session ?")
+                            .setPositiveButton("Yes", new DialogInterface.OnClickListener()
+                            {
+                                public void onClick(DialogInterface dialog, int which)
+                                {
+                                    if (session != null) {
+                                        session.close();
+                                    }
+                                    dialog.dismiss();
+                                }
+                            })
+                            .setNegativeButton("Cancel", new DialogInterface.OnClickListener()
+                            {
+                                public void onClick(DialogInterface dialog, int which)
+                                {
+                                    dialog.cancel();
+                                }
+                            })
+                            .show();
+                    return;
+                }
+
+                final EditText address = new EditText(MainActivity.this);
+                address.setHint("Host address (empty to host)");
+                address.setSingleLine(true);
+
+                new AlertDialog.Builder(MainActivity.this)
+                        .setTitle(R.string.msg_live_session)
+                        .setMessage("This device: " + localAddresses() + "\n(It will erase your animation!)")
+                        .setView(address)
+                        .setPositiveButton("Start", new DialogInterface.OnClickListener()
+                        {
+                            public void onClick(DialogInterface dialog, int which)
+                            {
+                                startSession(address.getText().toString().trim());
+                                dialog.dismiss();
+                            }
+                        })
+                        .setNegativeButton("Cancel", new DialogInterface.OnClickListener()
+                        {
+                            public void onClick(DialogInterface dialog, int which)
+                            {
+                                dialog.cancel();
+                            }
+                        })
+                        .show();
+            }
+        });
+
         btnAnimate.setOnClickListener(new OnClickListener()
         {
             @Override
@@ -386,6 +698,7 @@ public class MainActivity extends AppCompatActivity
                     indexText.setText(String.valueOf(drawView.frame()));
                     handler.postDelayed(animation, speed);
                 } else {
+                    running = false;
                     btnAnimate.setImageResource(R.drawable.ic_animate);
                     drawView.stop();
                 }
@@ -398,6 +711,9 @@ public class MainActivity extends AppCompatActivity
     {
         super.onDestroy();
         handler.removeCallbacks(animation);
+        if (session != null) {
+            session.close();
+        }
     }
 
     @Override
@@ -407,6 +723,43 @@ public class MainActivity extends AppCompatActivity
         btnLockRotation.callOnClick();
     }
 
+    @Override
+    protected void onActivityResult(int requestCode, int resultCode, Intent data)
+    {
+        super.onActivityResult(requestCode, resultCode, data);
+
+        if (requestCode != IMPORT || resultCode != RESULT_OK || data == null) {
+            return;
+        }
+
+        List<Uri> uris = new ArrayList<>();
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN && data.getClipData() != null) {
+            ClipData clip = data.getClipData();
+            for (int i = 0; i < clip.getItemCount(); i++) {
+                uris.add(clip.getItemAt(i).getUri());
+            }
+        } else if (data.getData() != null) {
+            uris.add(data.getData());
+        }
+
+        sortByName(uris);
+        boolean started = drawView.importFrames(uris, new DrawingView.OnImportListener()
+        {
+            @Override
+            public void onImportFinished(int failed)
+            {
+                if (failed > 0) {
+                    Toast.makeText(getApplicationContext(), failed + " file(s) could not be imported.", Toast.LENGTH_SHORT).show();
+                }
+            }
+        });
+        if (started) {
+            btnImport.setImageResource(R.drawable.ic_import_on);
+        } else {
+            Toast.makeText(getApplicationContext(), "Oops! Frames could not be imported.", Toast.LENGTH_SHORT).show();
+        }
+    }
+
     @Override
     public void onRequestPermissionsResult(int requestCode, @NonNull String permissions[], @NonNull int[] grantResults) {
         switch (requestCode) {
@@ -431,6 +784,130 @@ public class MainActivity extends AppCompatActivity
         }
     }
 
+    private void startSession(final String address)
+    {
+        if (drawView.isBusy()) {
+            Toast.makeText(getApplicationContext(), "Wait for the timeline to finish.", Toast.LENGTH_SHORT).show();
+            return;
+        }
+
+        new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try {
+                    final LiveSession started;
+                    if (address.isEmpty()) {
+                        started = LiveSession.host(LiveSession.DEFAULT_PORT, sessionListener);
+                    } else {
+                        int colon = address.lastIndexOf(':');
+                        if (colon > 0) {
+                            started = LiveSession.join(address.substring(0, colon), Integer.parseInt(address.substring(colon + 1)), sessionListener);
+                        } else {
+                            started = LiveSession.join(address, LiveSession.DEFAULT_PORT, sessionListener);
+                        }
+                    }
+
+                    runOnUiThread(new Runnable()
+                    {
+                        @Override
+                        public void run()
+                        {
+                            // Both sides start from the same single blank frame; anything drawn
+                            // while connecting was never seen by the host
+                            if (!drawView.clear()) {
+                                started.close();
+                                Toast.makeText(getApplicationContext(), "Wait for the timeline to finish.", Toast.LENGTH_SHORT).show();
+                                return;
+                            }
+                            session = started;
+                            drawView.setSession(started);
+                            btnSession.setImageResource(R.drawable.ic_session_on);
+                            if (started.isHost()) {
+                                Toast.makeText(getApplicationContext(), "Hosting on port " + started.getPort() + ".", Toast.LENGTH_SHORT).show();
+                            } else {
+                                Toast.makeText(getApplicationContext(), "Joined the session.", Toast.LENGTH_SHORT).show();
+                            }
+                        }
+                    });
+                } catch (IOException | NumberFormatException e) {
+                    Log.e("MainActivity", "Live session failed", e);
+                    runOnUiThread(new Runnable()
+                    {
+                        @Override
+                        public void run()
+                        {
+                            Toast.makeText(getApplicationContext(), "Oops! Live session could not start.", Toast.LENGTH_SHORT).show();
+                        }
+                    });
+                }
+            }
+        }).start();
+    }
+
+    private String localAddresses()
+    {
+        List<String> addresses = new ArrayList<>();
+        try {
+            for (NetworkInterface network : Collections.list(NetworkInterface.getNetworkInterfaces())) {
+                for (InetAddress address : Collections.list(network.getInetAddresses())) {
+                    if (!address.isLoopbackAddress() && address instanceof Inet4Address) {
+                        addresses.add(address.getHostAddress());
+                    }
+                }
+            }
+        } catch (IOException e) {
+            Log.e("MainActivity", "Cannot list network addresses", e);
+        }
+        return addresses.isEmpty() ? "offline" : TextUtils.join(", ", addresses);
+    }
+
+    private int parse(EditText text)
+    {
+        try {
+            return Integer.parseInt(text.getText().toString());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    // Pickers return a selection in no particular order, while sequences are numbered by file name
+    private void sortByName(List<Uri> uris)
+    {
+        final Map<Uri, String> names = new HashMap<>();
+        for (Uri uri : uris) {
+            String name = uri.getLastPathSegment();
+            Cursor cursor = getContentResolver().query(uri, new String[] {OpenableColumns.DISPLAY_NAME}, null, null, null);
+            if (cursor != null) {
+                try {
+                    if (cursor.moveToFirst() && !cursor.isNull(0)) {
+                        name = cursor.getString(0);
+                    }
+                } finally {
+                    cursor.close();
+                }
+            }
+            names.put(uri, name != null ? name : "");
+        }
+
+        Collections.sort(uris, new Comparator<Uri>()
+        {
+            @Override
+            public int compare(Uri a, Uri b)
+            {
+                return names.get(a).compareToIgnoreCase(names.get(b));
+            }
+        });
+    }
+
+    private void rangeResult(boolean submitted)
+    {
+        if (!submitted) {
+            Toast.makeText(getApplicationContext(), "Invalid range or timeline busy.", Toast.LENGTH_SHORT).show();
+        }
+    }
+
     public boolean saveImage()
     {
         drawView.setDrawingCacheEnabled(true);
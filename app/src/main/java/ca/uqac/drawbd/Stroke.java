@@ -0,0 +1,120 @@
+package ca.uqac.drawbd;
+
+public class Stroke
+{
+    private final float[] points;
+    private final int color;
+    private final float width;
+
+    public Stroke(float[] points, int color, float width)
+    {
+        if (points.length < 2 || points.length % 2 != 0) {
+            throw new IllegalArgumentException("A stroke needs at least one (x, y) point");
+        }
+
+        this.points = points;
+        this.color = color;
+        this.width = width;
+    }
+
+    public float[] getPoints()
+    {
+        return points;
+    }
+
+    public int getColor()
+    {
+        return color;
+    }
+
+    public float getWidth()
+    {
+        return width;
+    }
+
+    public int size()
+    {
+        return points.length / 2;
+    }
+
+    public Stroke scale(float sx, float sy)
+    {
+        float[] result = new float[points.length];
+        for (int i = 0; i < points.length; i += 2) {
+            result[i] = points[i] * sx;
+            result[i + 1] = points[i + 1] * sy;
+        }
+        return new Stroke(result, color, width * sx);
+    }
+
+    public Stroke resample(int count)
+    {
+        int n = size();
+        if (count == n) {
+            return this;
+        }
+
+        float[] result = new float[count * 2];
+
+        if (n == 1) {
+            for (int i = 0; i < count; i++) {
+                result[i * 2] = points[0];
+                result[i * 2 + 1] = points[1];
+            }
+            return new Stroke(result, color, width);
+        }
+
+        float[] lengths = new float[n];
+        for (int i = 1; i < n; i++) {
+            float dx = points[i * 2] - points[i * 2 - 2];
+            float dy = points[i * 2 + 1] - points[i * 2 - 1];
+            lengths[i] = lengths[i - 1] + (float) Math.sqrt(dx * dx + dy * dy);
+        }
+
+        float total = lengths[n - 1];
+        int segment = 0;
+        for (int i = 0; i < count; i++) {
+            float target = count == 1 ? 0 : total * i / (count - 1);
+            while (segment < n - 2 && lengths[segment + 1] < target) {
+                segment++;
+            }
+
+            float span = lengths[segment + 1] - lengths[segment];
+            float f = span > 0 ? Math.min(1, (target - lengths[segment]) / span) : 0;
+            result[i * 2] = lerp(points[segment * 2], points[segment * 2 + 2], f);
+            result[i * 2 + 1] = lerp(points[segment * 2 + 1], points[segment * 2 + 3], f);
+        }
+
+        return new Stroke(result, color, width);
+    }
+
+    public static Stroke interpolate(Stroke a, Stroke b, float t)
+    {
+        int count = Math.max(a.size(), b.size());
+        float[] pa = a.resample(count).points;
+        float[] pb = b.resample(count).points;
+
+        float[] result = new float[count * 2];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = lerp(pa[i], pb[i], t);
+        }
+
+        return new Stroke(result, lerpColor(a.color, b.color, t), lerp(a.width, b.width, t));
+    }
+
+    private static float lerp(float a, float b, float t)
+    {
+        return a + (b - a) * t;
+    }
+
+    private static int lerpColor(int a, int b, float t)
+    {
+        int color = 0;
+        for (int shift = 0; shift < 32; shift += 8) {
+            int ca = (a >>> shift) & 0xFF;
+            int cb = (b >>> shift) & 0xFF;
+            color |= Math.round(lerp(ca, cb, t)) << shift;
+        }
+        return color;
+    }
+}
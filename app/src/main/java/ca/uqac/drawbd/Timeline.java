@@ -0,0 +1,81 @@
+package ca.uqac.drawbd;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+// Range edits shared by every timeline operation; new frames are made by the caller.
+// Each edit returns the frame to show afterwards.
+final class Timeline
+{
+    private Timeline() {}
+
+    static boolean isRange(int size, int from, int to)
+    {
+        return from >= 0 && from <= to && to < size;
+    }
+
+    // New frames get the next ids in timeline order; returns the next free id
+    static int number(List<Frame> frames, int next)
+    {
+        for (Frame frame : frames) {
+            if (frame.id < 0) {
+                frame.id = next++;
+            }
+        }
+        return next;
+    }
+
+    static Frame find(List<Frame> frames, int id)
+    {
+        for (Frame frame : frames) {
+            if (frame.id == id) {
+                return frame;
+            }
+        }
+        return null;
+    }
+
+    // Target is where the range starts once it has been taken out of the timeline
+    static boolean canMove(int size, int from, int to, int target)
+    {
+        return isRange(size, from, to) && target >= 0 && target + to - from < size;
+    }
+
+    static <T> int insert(List<T> frames, int at, List<T> inserted)
+    {
+        frames.addAll(at, inserted);
+        return at;
+    }
+
+    static <T> int duplicate(List<T> frames, int to, List<T> copies)
+    {
+        frames.addAll(to + 1, copies);
+        return to + 1;
+    }
+
+    static <T> int move(List<T> frames, int from, int to, int target)
+    {
+        List<T> range = frames.subList(from, to + 1);
+        List<T> moved = new ArrayList<>(range);
+        range.clear();
+        frames.addAll(target, moved);
+        return target;
+    }
+
+    static <T> void reverse(List<T> frames, int from, int to)
+    {
+        Collections.reverse(frames.subList(from, to + 1));
+    }
+
+    // A timeline is never empty: deleting every frame leaves one blank
+    static <T> int delete(List<T> frames, int from, int to, Callable<T> blank) throws Exception
+    {
+        frames.subList(from, to + 1).clear();
+        if (frames.isEmpty()) {
+            frames.add(blank.call());
+        }
+        return Math.min(from, frames.size() - 1);
+    }
+}
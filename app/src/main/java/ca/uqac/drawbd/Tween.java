@@ -0,0 +1,54 @@
+package ca.uqac.drawbd;
+
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.PorterDuff;
+import android.graphics.PorterDuffXfermode;
+
+import java.util.concurrent.Callable;
+
+class Tween implements Callable<Frame>
+{
+    private final Frame from;
+    private final Frame to;
+    private final float t;
+
+    Tween(Frame from, Frame to, float t)
+    {
+        this.from = from;
+        this.to = to;
+        this.t = t;
+    }
+
+    static boolean canInterpolate(Frame a, Frame b)
+    {
+        return a.vector && b.vector && !a.strokes.isEmpty() && a.strokes.size() == b.strokes.size();
+    }
+
+    @Override
+    public Frame call() throws InterruptedException
+    {
+        Frame frame = Frame.blank(from.bitmap.getWidth(), from.bitmap.getHeight());
+
+        if (canInterpolate(from, to)) {
+            for (int i = 0; i < from.strokes.size(); i++) {
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                frame.draw(Stroke.interpolate(from.strokes.get(i), to.strokes.get(i), t));
+            }
+        } else {
+            // Premultiplied (1 - t) * from + t * to
+            Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+            paint.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.ADD));
+            Canvas canvas = new Canvas(frame.bitmap);
+            paint.setAlpha(Math.round(255 * (1 - t)));
+            canvas.drawBitmap(from.bitmap, 0, 0, paint);
+            paint.setAlpha(Math.round(255 * t));
+            canvas.drawBitmap(to.bitmap, 0, 0, paint);
+            frame.vector = false;
+        }
+
+        return frame;
+    }
+}
@@ -0,0 +1,522 @@
+package ca.uqac.drawbd;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class LiveSessionTest
+{
+    private static final int STROKES = 500;
+    private static final int POINTS = 60;
+    private static final float EPSILON = 1f / 8191;
+    private static final int FRAMES = 8;
+    private static final int WIDTH = 1080;
+    private static final int HEIGHT = 1920;
+
+    private List<LiveSession> sessions = new ArrayList<>();
+
+    @After
+    public void tearDown()
+    {
+        for (LiveSession session : sessions) {
+            session.close();
+        }
+    }
+
+    @Test
+    public void codecRoundTrip() throws Exception
+    {
+        Stroke stroke = stroke(3);
+        List<Delta> deltas = Arrays.asList(
+                Delta.stroke(7, stroke, Delta.BRUSH_PATTERN + 2),
+                Delta.insertBlank(2, 30),
+                Delta.duplicate(0, 29),
+                Delta.move(4, 9, 12),
+                Delta.reverse(1, 200),
+                Delta.delete(5, 5),
+                Delta.clear());
+
+        List<Delta> decoded = DeltaCodec.decode(DeltaCodec.encode(deltas));
+
+        assertEquals(deltas.size(), decoded.size());
+        for (int i = 0; i < deltas.size(); i++) {
+            assertEquals(deltas.get(i).getType(), decoded.get(i).getType());
+            assertEquals(deltas.get(i).getFrom(), decoded.get(i).getFrom());
+            assertEquals(deltas.get(i).getTo(), decoded.get(i).getTo());
+            assertEquals(deltas.get(i).getTarget(), decoded.get(i).getTarget());
+        }
+
+        Delta first = decoded.get(0);
+        assertEquals(Delta.BRUSH_PATTERN + 2, first.getBrush());
+        assertStroke(stroke, first.getStroke());
+    }
+
+    @Test
+    public void codecKeepsPointsOutsideTheView() throws Exception
+    {
+        Stroke stroke = new Stroke(new float[] {0.5f, 0.5f, 1.25f, -0.3f, -0.75f, 1.9f, 0.5f, 0.5f}, 0xFF102030, 0.01f);
+
+        List<Delta> decoded = DeltaCodec.decode(DeltaCodec.encode(Arrays.asList(Delta.stroke(0, stroke, Delta.BRUSH_PAINT))));
+
+        assertStroke(stroke, decoded.get(0).getStroke());
+    }
+
+    @Test
+    public void decodeRejectsUnknownBrush() throws Exception
+    {
+        // A complete stroke whose brush byte, after the type and frame id, is out of range
+        byte[] batch = DeltaCodec.encode(Arrays.asList(Delta.stroke(0, stroke(1), Delta.BRUSH_PAINT)));
+        batch[2] = (byte) 200;
+
+        try {
+            DeltaCodec.decode(batch);
+            fail("Brush 200 decoded");
+        } catch (IOException expected) {
+        }
+    }
+
+    @Test
+    public void decodeRejectsPointCountLargerThanBatch() throws Exception
+    {
+        // Stroke header claiming 16M points, 128 MB of floats, in a 13-byte batch
+        byte[] batch = {Delta.STROKE, 0, Delta.BRUSH_PAINT, 0, 0, 0, 0, 0, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x07, 0};
+
+        try {
+            DeltaCodec.decode(batch);
+            fail("Point count larger than the batch decoded");
+        } catch (IOException expected) {
+        }
+    }
+
+    @Test
+    public void loopbackStrokes() throws Exception
+    {
+        final CountDownLatch received = new CountDownLatch(STROKES);
+        final ConcurrentHashMap<Integer, Long> latencies = new ConcurrentHashMap<>();
+        final ConcurrentLinkedQueue<Throwable> failures = new ConcurrentLinkedQueue<>();
+        final long[] sent = new long[STROKES];
+        final Stroke[] strokes = new Stroke[STROKES];
+        final Model timeline = new Model();
+
+        // Latency runs until the stroke is decoded and recorded on its frame
+        LiveSession host = host(new Recorder()
+        {
+            @Override
+            public void onDeltas(List<Delta> deltas, boolean own)
+            {
+                for (Delta delta : deltas) {
+                    try {
+                        int i = delta.getStroke().getColor() & 0xFFFF;
+                        assertStroke(strokes[i], delta.getStroke());
+                        assertTrue(timeline.apply(delta));
+                        latencies.put(i, System.nanoTime() - sent[i]);
+                    } catch (Throwable e) {
+                        failures.add(e);
+                    } finally {
+                        received.countDown();
+                    }
+                }
+            }
+        });
+        LiveSession peer = join(host, new Recorder());
+
+        for (int i = 0; i < STROKES; i++) {
+            strokes[i] = stroke(i);
+            sent[i] = System.nanoTime();
+            peer.send(Delta.stroke(i % FRAMES, strokes[i], Delta.BRUSH_PAINT));
+        }
+
+        assertTrue(received.await(10, TimeUnit.SECONDS));
+        for (Throwable failure : failures) {
+            throw new AssertionError(failure);
+        }
+
+        long total = 0;
+        long max = 0;
+        for (long latency : latencies.values()) {
+            total += latency;
+            max = Math.max(max, latency);
+        }
+        double bytesPerStroke = (double) peer.getBytesSent() / STROKES;
+        System.out.println(String.format("%d strokes of %d points: %.1f bytes/stroke (raw floats %d), latency mean %.2f ms, max %.2f ms",
+                STROKES, POINTS, bytesPerStroke, POINTS * 8, total / 1e6 / STROKES, max / 1e6));
+
+        assertEquals(STROKES, peer.getDeltasSent());
+        assertTrue(bytesPerStroke < POINTS * 8 / 2);
+    }
+
+    // A micro-benchmark of decoding plus the list side of DrawingView.apply; drawing into
+    // bitmaps needs a device and is not measured
+    @Test
+    public void decodeAndEditTimeline() throws Exception
+    {
+        List<Delta> deltas = new ArrayList<>();
+        int frames = FRAMES;
+        for (int i = 0; i < STROKES; i++) {
+            deltas.add(Delta.stroke(i % (FRAMES + 4), stroke(i), Delta.BRUSH_PAINT));
+            switch (i % 40) {
+                case 9:
+                    deltas.add(Delta.duplicate(0, 1));
+                    frames += 2;
+                    break;
+                case 19:
+                    deltas.add(Delta.move(0, 2, 5));
+                    break;
+                case 29:
+                    deltas.add(Delta.reverse(1, 6));
+                    break;
+                case 39:
+                    deltas.add(Delta.delete(0, 1));
+                    frames -= 2;
+                    break;
+            }
+        }
+
+        // Batches as the session sends them, one display frame of deltas each
+        List<byte[]> batches = new ArrayList<>();
+        for (int i = 0; i < deltas.size(); i += 16) {
+            batches.add(DeltaCodec.encode(deltas.subList(i, Math.min(i + 16, deltas.size()))));
+        }
+
+        Model timeline = null;
+        int applied = 0;
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < 20; round++) {
+            timeline = new Model();
+            applied = 0;
+            long start = System.nanoTime();
+            for (byte[] batch : batches) {
+                for (Delta delta : DeltaCodec.decode(batch)) {
+                    if (timeline.apply(delta)) {
+                        applied++;
+                    }
+                }
+            }
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        System.out.println(String.format("decode and timeline edits, no drawing: %.2f us/delta over %d deltas",
+                best / 1e3 / deltas.size(), deltas.size()));
+
+        // Strokes on ids that were deleted, or not created yet, are dropped as on a device
+        assertEquals(frames, timeline.frames.size());
+        assertTrue(applied > STROKES / 2 && applied < deltas.size());
+        List<Integer> ids = new ArrayList<>();
+        for (Frame frame : timeline.frames) {
+            assertFalse(ids.contains(frame.id));
+            ids.add(frame.id);
+        }
+    }
+
+    @Test
+    public void lateJoinerReplaysJournal() throws Exception
+    {
+        LiveSession host = host(new Recorder());
+        final CountDownLatch first = new CountDownLatch(1);
+        join(host, new Recorder()
+        {
+            @Override
+            public void onDeltas(List<Delta> deltas, boolean own)
+            {
+                first.countDown();
+            }
+        });
+
+        host.send(Delta.insertBlank(1, 2));
+        host.send(Delta.stroke(2, stroke(0), Delta.BRUSH_ERASE));
+        assertTrue(first.await(5, TimeUnit.SECONDS));
+
+        final List<Delta> replayed = new ArrayList<>();
+        final CountDownLatch late = new CountDownLatch(2);
+        join(host, new Recorder()
+        {
+            @Override
+            public synchronized void onDeltas(List<Delta> deltas, boolean own)
+            {
+                replayed.addAll(deltas);
+                for (int i = 0; i < deltas.size(); i++) {
+                    late.countDown();
+                }
+            }
+        });
+
+        assertTrue(late.await(5, TimeUnit.SECONDS));
+        assertEquals(Delta.INSERT_BLANK, replayed.get(0).getType());
+        assertEquals(Delta.STROKE, replayed.get(1).getType());
+        assertEquals(Delta.BRUSH_ERASE, replayed.get(1).getBrush());
+    }
+
+    @Test
+    public void journalStartsOverAtClear() throws Exception
+    {
+        final CountDownLatch sequenced = new CountDownLatch(3);
+        LiveSession host = host(new Recorder()
+        {
+            @Override
+            public void onDeltas(List<Delta> deltas, boolean own)
+            {
+                for (int i = 0; i < deltas.size(); i++) {
+                    sequenced.countDown();
+                }
+            }
+        });
+
+        // One batch each, so the clear is not bundled with the edit before it
+        host.send(Delta.insertBlank(1, 4));
+        Thread.sleep(100);
+        host.send(Delta.clear());
+        Thread.sleep(100);
+        host.send(Delta.reverse(0, 0));
+        assertTrue(sequenced.await(5, TimeUnit.SECONDS));
+
+        Order late = new Order();
+        join(host, late);
+        Thread.sleep(200);
+
+        assertEquals(Arrays.asList(Delta.CLEAR, Delta.REVERSE), late.types);
+    }
+
+    @Test
+    public void closedIsReportedOnce() throws Exception
+    {
+        final AtomicInteger closes = new AtomicInteger();
+        LiveSession host = host(new Recorder());
+        LiveSession peer = join(host, new Recorder()
+        {
+            @Override
+            public void onClosed(IOException cause)
+            {
+                closes.incrementAndGet();
+            }
+        });
+
+        // The peer is still sending when the host goes away, so both of its loops fail
+        for (int i = 0; i < 200; i++) {
+            peer.send(Delta.stroke(0, stroke(i), Delta.BRUSH_PAINT));
+        }
+        host.close();
+        for (int i = 0; i < 200; i++) {
+            peer.send(Delta.stroke(0, stroke(i), Delta.BRUSH_PAINT));
+            Thread.sleep(1);
+        }
+
+        assertEquals(1, closes.get());
+    }
+
+    @Test
+    public void hostRelaysBetweenPeers() throws Exception
+    {
+        LiveSession host = host(new Recorder());
+        final CountDownLatch relayed = new CountDownLatch(1);
+        LiveSession teacher = join(host, new Recorder());
+        join(host, new Recorder()
+        {
+            @Override
+            public void onDeltas(List<Delta> deltas, boolean own)
+            {
+                if (deltas.get(0).getType() == Delta.REVERSE) {
+                    relayed.countDown();
+                }
+            }
+        });
+
+        while (host.getPeerCount() < 2) {
+            Thread.sleep(10);
+        }
+        teacher.send(Delta.reverse(0, 4));
+
+        assertTrue(relayed.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void everyDeviceAppliesTheHostOrder() throws Exception
+    {
+        Order hostOrder = new Order();
+        Order firstOrder = new Order();
+        Order secondOrder = new Order();
+        LiveSession host = host(hostOrder);
+        LiveSession first = join(host, firstOrder);
+        LiveSession second = join(host, secondOrder);
+        while (host.getPeerCount() < 2) {
+            Thread.sleep(10);
+        }
+
+        // Concurrent edits from three devices, each of which also receives its own back
+        for (int i = 0; i < 20; i++) {
+            host.send(Delta.insertBlank(i, 1));
+            first.send(Delta.delete(i, i));
+            second.send(Delta.duplicate(i, i));
+        }
+
+        assertTrue(hostOrder.await());
+        assertTrue(firstOrder.await());
+        assertTrue(secondOrder.await());
+        assertEquals(hostOrder.types, firstOrder.types);
+        assertEquals(hostOrder.types, secondOrder.types);
+        assertEquals(20, hostOrder.own(Delta.INSERT_BLANK));
+        assertEquals(20, firstOrder.own(Delta.DELETE));
+        assertEquals(20, secondOrder.own(Delta.DUPLICATE));
+        assertEquals(0, hostOrder.own(Delta.DELETE) + firstOrder.own(Delta.DUPLICATE) + secondOrder.own(Delta.INSERT_BLANK));
+    }
+
+    private LiveSession host(LiveSession.Listener listener) throws IOException
+    {
+        LiveSession session = LiveSession.host(0, listener);
+        sessions.add(session);
+        return session;
+    }
+
+    private LiveSession join(LiveSession host, LiveSession.Listener listener) throws IOException
+    {
+        LiveSession session = LiveSession.join("127.0.0.1", host.getPort(), listener);
+        sessions.add(session);
+        return session;
+    }
+
+    private static Stroke stroke(int seed)
+    {
+        float[] points = new float[POINTS * 2];
+        for (int i = 0; i < POINTS; i++) {
+            // A finger drag across a quarter of the canvas, sampled at touch rate
+            points[i * 2] = 0.2f + 0.25f * i / POINTS + 0.001f * (seed % 7);
+            points[i * 2 + 1] = 0.5f + 0.1f * (float) Math.sin(i * 0.05 + seed);
+        }
+        return new Stroke(points, 0x80FF0000 | seed, 0.015f);
+    }
+
+    private static void assertStroke(Stroke expected, Stroke actual)
+    {
+        assertEquals(expected.getColor(), actual.getColor());
+        assertEquals(expected.getWidth(), actual.getWidth(), EPSILON);
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.getPoints().length; i++) {
+            assertEquals(expected.getPoints()[i], actual.getPoints()[i], EPSILON);
+        }
+    }
+
+    private static class Order extends Recorder
+    {
+        final List<Integer> types = new ArrayList<>();
+        final List<Integer> owned = new ArrayList<>();
+        final CountDownLatch received = new CountDownLatch(60);
+
+        @Override
+        public synchronized void onDeltas(List<Delta> deltas, boolean own)
+        {
+            for (Delta delta : deltas) {
+                types.add(delta.getType());
+                if (own) {
+                    owned.add(delta.getType());
+                }
+                received.countDown();
+            }
+        }
+
+        boolean await() throws InterruptedException
+        {
+            return received.await(5, TimeUnit.SECONDS);
+        }
+
+        synchronized int own(int type)
+        {
+            return Collections.frequency(owned, type);
+        }
+    }
+
+    // The list side of DrawingView.apply: the same id lookup, range checks, Timeline edits and
+    // numbering, with strokes recorded on their frame instead of drawn into a bitmap
+    private static class Model
+    {
+        final List<Frame> frames = new ArrayList<>();
+        int nextId;
+
+        Model()
+        {
+            for (int i = 0; i < FRAMES; i++) {
+                frames.add(new Frame(null));
+            }
+            nextId = Timeline.number(frames, 0);
+        }
+
+        // False when the delta does not fit the timeline and a device would drop it
+        boolean apply(Delta delta) throws Exception
+        {
+            int from = delta.getFrom();
+            int to = delta.getTo();
+            switch (delta.getType()) {
+                case Delta.STROKE:
+                    Frame frame = Timeline.find(frames, delta.getFrame());
+                    if (frame == null) {
+                        return false;
+                    }
+                    frame.strokes.add(delta.getStroke().scale(WIDTH, HEIGHT));
+                    return true;
+                case Delta.DUPLICATE:
+                    if (!Timeline.isRange(frames.size(), from, to)) {
+                        return false;
+                    }
+                    List<Frame> copies = new ArrayList<>();
+                    for (Frame source : frames.subList(from, to + 1)) {
+                        Frame copy = new Frame(null);
+                        copy.strokes.addAll(source.strokes);
+                        copies.add(copy);
+                    }
+                    Timeline.duplicate(frames, to, copies);
+                    break;
+                case Delta.MOVE:
+                    if (!Timeline.canMove(frames.size(), from, to, delta.getTarget())) {
+                        return false;
+                    }
+                    Timeline.move(frames, from, to, delta.getTarget());
+                    break;
+                case Delta.REVERSE:
+                    if (!Timeline.isRange(frames.size(), from, to)) {
+                        return false;
+                    }
+                    Timeline.reverse(frames, from, to);
+                    break;
+                case Delta.DELETE:
+                    if (!Timeline.isRange(frames.size(), from, to)) {
+                        return false;
+                    }
+                    Timeline.delete(frames, from, to, new Callable<Frame>()
+                    {
+                        @Override
+                        public Frame call()
+                        {
+                            return new Frame(null);
+                        }
+                    });
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unexpected delta " + delta.getType());
+            }
+            nextId = Timeline.number(frames, nextId);
+            return true;
+        }
+    }
+
+    private static class Recorder implements LiveSession.Listener
+    {
+        @Override
+        public void onDeltas(List<Delta> deltas, boolean own) {}
+
+        @Override
+        public void onPeerConnected() {}
+
+        @Override
+        public void onClosed(IOException cause) {}
+    }
+}
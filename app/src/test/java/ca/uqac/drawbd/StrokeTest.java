@@ -0,0 +1,105 @@
+package ca.uqac.drawbd;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class StrokeTest
+{
+    private static final float EPSILON = 1e-4f;
+
+    @Test
+    public void resampleSinglePoint()
+    {
+        Stroke dot = new Stroke(new float[] {3, 4}, 0xFF000000, 2);
+
+        float[] points = dot.resample(5).getPoints();
+
+        assertEquals(10, points.length);
+        for (int i = 0; i < points.length; i += 2) {
+            assertEquals(3, points[i], EPSILON);
+            assertEquals(4, points[i + 1], EPSILON);
+        }
+    }
+
+    @Test
+    public void resampleFollowsArcLength()
+    {
+        // Segments of length 10 and 30: evenly spaced samples fall every 10 units
+        Stroke stroke = new Stroke(new float[] {0, 0, 10, 0, 40, 0}, 0xFF000000, 2);
+
+        float[] points = stroke.resample(5).getPoints();
+
+        assertArrayEquals(new float[] {0, 0, 10, 0, 20, 0, 30, 0, 40, 0}, points, EPSILON);
+    }
+
+    @Test
+    public void resampleZeroLengthSegment()
+    {
+        Stroke stroke = new Stroke(new float[] {0, 0, 0, 0, 10, 10}, 0xFF000000, 2);
+
+        float[] points = stroke.resample(5).getPoints();
+
+        for (float value : points) {
+            assertFalse(Float.isNaN(value));
+        }
+        assertEquals(0, points[0], EPSILON);
+        assertEquals(10, points[8], EPSILON);
+        assertEquals(10, points[9], EPSILON);
+    }
+
+    @Test
+    public void resampleAllPointsEqual()
+    {
+        Stroke stroke = new Stroke(new float[] {5, 5, 5, 5, 5, 5}, 0xFF000000, 2);
+
+        float[] points = stroke.resample(4).getPoints();
+
+        for (float value : points) {
+            assertEquals(5, value, EPSILON);
+        }
+    }
+
+    @Test
+    public void interpolateDifferentPointCounts()
+    {
+        Stroke a = new Stroke(new float[] {0, 0, 10, 0}, 0xFF000000, 2);
+        Stroke b = new Stroke(new float[] {0, 10, 5, 10, 10, 10, 15, 10, 20, 10}, 0xFF000000, 6);
+
+        Stroke half = Stroke.interpolate(a, b, 0.5f);
+
+        assertEquals(5, half.size());
+        assertEquals(4, half.getWidth(), EPSILON);
+        float[] points = half.getPoints();
+        assertEquals(0, points[0], EPSILON);
+        assertEquals(5, points[1], EPSILON);
+        assertEquals(15, points[8], EPSILON);
+        assertEquals(5, points[9], EPSILON);
+    }
+
+    @Test
+    public void interpolateEndsMatchKeyframes()
+    {
+        Stroke a = new Stroke(new float[] {0, 0, 10, 0}, 0x11223344, 2);
+        Stroke b = new Stroke(new float[] {0, 10, 10, 10}, 0x55667788, 6);
+
+        assertArrayEquals(a.getPoints(), Stroke.interpolate(a, b, 0).getPoints(), EPSILON);
+        assertArrayEquals(b.getPoints(), Stroke.interpolate(a, b, 1).getPoints(), EPSILON);
+        assertEquals(a.getColor(), Stroke.interpolate(a, b, 0).getColor());
+        assertEquals(b.getColor(), Stroke.interpolate(a, b, 1).getColor());
+    }
+
+    @Test
+    public void interpolateBlendsEachArgbChannel()
+    {
+        Stroke a = new Stroke(new float[] {0, 0}, 0x00FF0080, 1);
+        Stroke b = new Stroke(new float[] {0, 0}, 0xFF00FF80, 1);
+
+        int color = Stroke.interpolate(a, b, 0.5f).getColor();
+
+        assertEquals(0x80, color >>> 24);
+        assertEquals(0x80, (color >>> 16) & 0xFF);
+        assertEquals(0x80, (color >>> 8) & 0xFF);
+        assertEquals(0x80, color & 0xFF);
+    }
+}
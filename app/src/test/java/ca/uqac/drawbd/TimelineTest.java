@@ -0,0 +1,123 @@
+package ca.uqac.drawbd;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import static org.junit.Assert.*;
+
+public class TimelineTest
+{
+    private static final Callable<String> BLANK = new Callable<String>()
+    {
+        @Override
+        public String call()
+        {
+            return "blank";
+        }
+    };
+
+    @Test
+    public void moveTargetIsIndexAfterRemoval()
+    {
+        List<String> frames = frames("a", "b", "c", "d", "e");
+
+        int shown = Timeline.move(frames, 1, 2, 2);
+
+        assertEquals(frames("a", "d", "b", "c", "e"), frames);
+        assertEquals(2, shown);
+    }
+
+    @Test
+    public void moveToFront()
+    {
+        List<String> frames = frames("a", "b", "c", "d");
+
+        Timeline.move(frames, 2, 3, 0);
+
+        assertEquals(frames("c", "d", "a", "b"), frames);
+    }
+
+    @Test
+    public void moveRejectsTargetPastEnd()
+    {
+        assertTrue(Timeline.canMove(5, 1, 2, 3));
+        assertFalse(Timeline.canMove(5, 1, 2, 4));
+        assertFalse(Timeline.canMove(5, 1, 2, -1));
+        assertFalse(Timeline.canMove(5, 3, 5, 0));
+    }
+
+    @Test
+    public void duplicateInsertsRightAfterRange()
+    {
+        List<String> frames = frames("a", "b", "c");
+
+        int shown = Timeline.duplicate(frames, 1, frames("a'", "b'"));
+
+        assertEquals(frames("a", "b", "a'", "b'", "c"), frames);
+        assertEquals(2, shown);
+    }
+
+    @Test
+    public void insertAtEnd()
+    {
+        List<String> frames = frames("a", "b");
+
+        int shown = Timeline.insert(frames, 2, frames("blank", "blank"));
+
+        assertEquals(frames("a", "b", "blank", "blank"), frames);
+        assertEquals(2, shown);
+    }
+
+    @Test
+    public void reverseOnlyTouchesRange()
+    {
+        List<String> frames = frames("a", "b", "c", "d", "e");
+
+        Timeline.reverse(frames, 1, 3);
+
+        assertEquals(frames("a", "d", "c", "b", "e"), frames);
+    }
+
+    @Test
+    public void deleteShowsFrameAfterRange() throws Exception
+    {
+        List<String> frames = frames("a", "b", "c", "d");
+
+        assertEquals(1, Timeline.delete(frames, 1, 1, BLANK));
+        assertEquals(frames("a", "c", "d"), frames);
+
+        // Nothing after the range: the last remaining frame is shown
+        assertEquals(0, Timeline.delete(frames, 1, 2, BLANK));
+        assertEquals(frames("a"), frames);
+    }
+
+    @Test
+    public void deleteWholeTimelineLeavesOneBlank() throws Exception
+    {
+        List<String> frames = frames("a", "b", "c");
+
+        int shown = Timeline.delete(frames, 0, 2, BLANK);
+
+        assertEquals(frames("blank"), frames);
+        assertEquals(0, shown);
+    }
+
+    @Test
+    public void isRangeRejectsOutOfBounds()
+    {
+        assertTrue(Timeline.isRange(3, 0, 2));
+        assertTrue(Timeline.isRange(3, 1, 1));
+        assertFalse(Timeline.isRange(3, 2, 1));
+        assertFalse(Timeline.isRange(3, -1, 1));
+        assertFalse(Timeline.isRange(3, 0, 3));
+    }
+
+    private static List<String> frames(String... names)
+    {
+        return new ArrayList<>(Arrays.asList(names));
+    }
+}